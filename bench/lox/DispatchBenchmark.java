@@ -0,0 +1,49 @@
+package lox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.util.List;
+
+// A/B of two builds of the interpreter, e.g. the visitor dispatch it uses
+// against a build that switches on the nodes' kind tags (which is how the
+// switch was measured, and dropped, as ~3x slower on recursion).
+// each build runs PhaseBenchmark's interpret phase over the corpus in its
+// own JVM, so neither build's JIT profile leaks into the other's numbers,
+// and production code needs no switch between the two.
+// both class dirs need src and bench compiled into them.
+// run: java -cp <out> lox.DispatchBenchmark <baseline classes> <candidate classes> [corpus dir]
+public class DispatchBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: DispatchBenchmark <baseline classes> <candidate classes> [corpus dir]");
+            System.exit(64);
+        }
+        String corpus = args.length > 2 ? args[2] : "bench/corpus";
+        // fail here rather than twice in the children
+        Harness.programs(Paths.get(corpus));
+
+        System.out.printf("%-9s %-10s %-16s %s%n", "build", "phase", "program", Harness.summaryHeader());
+        run("baseline", args[0], corpus);
+        run("candidate", args[1], corpus);
+    }
+
+    private static void run(String build, String classes, String corpus) throws IOException, InterruptedException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Process child = new ProcessBuilder(java, "-cp", classes, "lox.PhaseBenchmark", corpus, "interpret")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+            // drop the child's own header, label its rows w/ the build
+            List<String> rows = out.lines().skip(1).toList();
+            for (String row : rows)
+                System.out.printf("%-9s %s%n", build, row);
+        }
+        int status = child.waitFor();
+        if (status != 0) {
+            System.err.println(build+" run failed ("+status+").");
+            System.exit(70);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package lox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+// what the benchmarks here share: finding the corpus programs, timing an op
+// and summing up the rounds.
+// no JMH here: each round runs a batch sized to ~ROUND_MS after a warmup,
+// and summary() gives the median, min and spread (max-min)/median of the
+// measured rounds. a spread over ~5% means the numbers aren't stable yet,
+// re-run on a quieter machine before comparing anything.
+class Harness {
+    private static final int ROUNDS = 10, WARMUP = 5;
+    private static final long ROUND_MS = 100;
+
+    // the .txt programs in dir, sorted. exits if there are none
+    static List<Path> programs(Path dir) throws IOException {
+        List<Path> programs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.toString().endsWith(".txt")).sorted().forEach(programs::add);
+        }
+        if (programs.isEmpty()) {
+            System.err.println("No .txt programs in "+dir+".");
+            System.exit(64);
+        }
+        return programs;
+    }
+
+    // ns per op for each measured round
+    static long[] measure(Runnable op) {
+        // size a batch so one round takes about ROUND_MS
+        long batch = 1;
+        while (true) {
+            long start = System.nanoTime();
+            for (long i=0; i<batch; i++)
+                op.run();
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= ROUND_MS*1_000_000/4) {
+                batch = Math.max(1, batch*ROUND_MS*1_000_000/elapsed);
+                break;
+            }
+            batch *= 2;
+        }
+
+        long[] times = new long[ROUNDS];
+        for (int round=0; round<WARMUP+ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (long i=0; i<batch; i++)
+                op.run();
+            long elapsed = System.nanoTime() - start;
+            if (round >= WARMUP)
+                times[round-WARMUP] = elapsed/batch;
+        }
+        return times;
+    }
+
+    // "median us, min us, spread" columns, sorts times
+    static String summary(long[] times) {
+        Arrays.sort(times);
+        long median = Natives.percentile(times, 50);
+        double spread = 100.*(times[times.length-1] - times[0])/median;
+        return String.format("%12.1f %12.1f %7.1f%%", median/1e3, times[0]/1e3, spread);
+    }
+
+    static String summaryHeader() {
+        return String.format("%12s %12s %8s", "median us", "min us", "spread");
+    }
+}
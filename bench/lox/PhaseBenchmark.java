@@ -0,0 +1,67 @@
+package lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+// scanner, parser, resolver and interpreter measured separately over each
+// program in the corpus (bench/corpus: recursion, loops, arrays, strings,
+// binary trees, n-body, spectral norm), which ScriptBenchmark runs end to end.
+// every phase gets the previous phase's output prepared once up front, so
+// e.g. the parse numbers don't include scanning.
+// timing and the table's columns are Harness's.
+// run: java -cp <out> lox.PhaseBenchmark [corpus dir] [scan|parse|resolve|interpret]
+public class PhaseBenchmark {
+    // keeps results alive so the JIT can't drop the work
+    private static long sink = 0;
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "bench/corpus");
+        String only = args.length > 1 ? args[1] : null;
+
+        System.out.printf("%-10s %-16s %s%n", "phase", "program", Harness.summaryHeader());
+        for (Path program : Harness.programs(dir))
+            run(program, only);
+        if (sink == 42) System.out.println();
+    }
+
+    private static void run(Path program, String only) throws IOException {
+        String name = program.getFileName().toString();
+        String source = Files.readString(program);
+
+        // prepare each phase's input once, bailing out on a broken program.
+        // the programs print their result, keep that out of the table
+        ErrorReporter errors = new ErrorReporter(System.out, System.err);
+        Interpreter interpreter = new Interpreter(errors, new PrintStream(OutputStream.nullOutputStream()));
+        TokenBuffer tokens = new Scanner(source, errors).scanBuffer();
+        List<Stmt> stmts = new Parser(tokens, errors).parse();
+        new Resolver(interpreter).resolve(stmts);
+        if (errors.hadError) {
+            System.err.println("Skipping "+name+": it doesn't compile.");
+            return;
+        }
+
+        if (only == null || only.equals("scan"))
+            report("scan", name, Harness.measure(() -> sink += new Scanner(source, errors).scanBuffer().size()));
+        if (only == null || only.equals("parse"))
+            report("parse", name, Harness.measure(() -> sink += new Parser(tokens, errors).parse().size()));
+        if (only == null || only.equals("resolve"))
+            report("resolve", name, Harness.measure(() -> new Resolver(interpreter).resolve(stmts)));
+        if (only == null || only.equals("interpret")) {
+            long[] times = Harness.measure(() -> interpreter.interpret(stmts));
+            if (errors.hadRuntimeError) {
+                System.err.println("Skipping "+name+": runtime error while interpreting.");
+                return;
+            }
+            report("interpret", name, times);
+        }
+    }
+
+    private static void report(String phase, String program, long[] times) {
+        System.out.printf("%-10s %-16s %s%n", phase, program, Harness.summary(times));
+    }
+}
@@ -0,0 +1,147 @@
+package lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// end-to-end Lox benchmarks over the same corpus as PhaseBenchmark
+// (bench/corpus). each run scans, parses, resolves and interprets the
+// script w/ a fresh Interpreter, all in this JVM, so warmup carries over.
+//   java -cp <out> lox.ScriptBenchmark run [--warmup=N] [--runs=N] [--out=file] [dir]
+//   java -cp <out> lox.ScriptBenchmark compare <base file> <new file> [--threshold=pct]
+// result files are tab separated: script, runs, then min/p50/p90/max in ns.
+// compare flags scripts whose median got slower by more than the threshold
+// (default 5%) and exits with 1 if there were any.
+public class ScriptBenchmark {
+    private static final String HEADER = "# script\truns\tmin\tp50\tp90\tmax";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("run"))
+            run(Arrays.copyOfRange(args, 1, args.length));
+        else if (args.length > 0 && args[0].equals("compare"))
+            compare(Arrays.copyOfRange(args, 1, args.length));
+        else {
+            System.out.println("Usage: ScriptBenchmark run [--warmup=N] [--runs=N] [--out=file] [dir]");
+            System.out.println("       ScriptBenchmark compare <base file> <new file> [--threshold=pct]");
+            System.exit(64);
+        }
+    }
+
+    private static void run(String[] args) throws IOException {
+        int warmup = 3, runs = 10;
+        Path dir = Paths.get("bench/corpus"), out = null;
+        for (String arg : args) {
+            if (arg.startsWith("--warmup="))
+                warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            else if (arg.startsWith("--runs="))
+                runs = Integer.parseInt(arg.substring("--runs=".length()));
+            else if (arg.startsWith("--out="))
+                out = Paths.get(arg.substring("--out=".length()));
+            else
+                dir = Paths.get(arg);
+        }
+
+        List<Path> scripts = Harness.programs(dir);
+
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        System.out.printf("%-18s %10s %10s %10s %10s%n", "script", "min ms", "p50 ms", "p90 ms", "max ms");
+        for (Path script : scripts) {
+            String name = script.getFileName().toString();
+            String source = Files.readString(script);
+            long[] times = new long[runs];
+            boolean ok = true;
+            for (int i=0; i<warmup+runs && ok; i++) {
+                long start = System.nanoTime();
+                ok = runOnce(source);
+                if (i >= warmup)
+                    times[i-warmup] = System.nanoTime() - start;
+            }
+            if (!ok) {
+                System.err.println("Skipping "+name+": it failed to compile or run.");
+                continue;
+            }
+            Arrays.sort(times);
+            long min = times[0], p50 = Natives.percentile(times, 50), p90 = Natives.percentile(times, 90), max = times[runs-1];
+            System.out.printf("%-18s %10.2f %10.2f %10.2f %10.2f%n", name, min/1e6, p50/1e6, p90/1e6, max/1e6);
+            lines.add(name+"\t"+runs+"\t"+min+"\t"+p50+"\t"+p90+"\t"+max);
+        }
+
+        if (out != null) {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(out))) {
+                for (String line : lines)
+                    writer.println(line);
+            }
+        }
+    }
+
+    // false if the script had a compile or runtime error.
+    // the scripts' own output is dropped, errors still go to stderr
+    private static boolean runOnce(String source) {
+        LoxRuntime runtime = new LoxRuntime(new PrintStream(OutputStream.nullOutputStream()), System.err);
+        return runtime.run(source) == 0;
+    }
+
+    private static void compare(String[] args) throws IOException {
+        double threshold = 5;
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--threshold="))
+                threshold = Double.parseDouble(arg.substring("--threshold=".length()));
+            else
+                files.add(Paths.get(arg));
+        }
+        if (files.size() != 2) {
+            System.err.println("compare takes a base and a new result file.");
+            System.exit(64);
+        }
+        Map<String, Long> base = medians(files.get(0));
+        Map<String, Long> current = medians(files.get(1));
+
+        int regressions = 0;
+        System.out.printf("%-18s %10s %10s %8s%n", "script", "base ms", "new ms", "change");
+        for (Map.Entry<String, Long> entry : current.entrySet()) {
+            String name = entry.getKey();
+            Long before = base.get(name);
+            if (before == null) {
+                System.out.printf("%-18s %10s %10.2f %8s%n", name, "-", entry.getValue()/1e6, "new");
+                continue;
+            }
+            double change = 100.*(entry.getValue() - before)/before;
+            boolean regressed = change > threshold;
+            if (regressed) regressions++;
+            System.out.printf("%-18s %10.2f %10.2f %+7.1f%%%s%n", name, before/1e6, entry.getValue()/1e6,
+                                change, regressed ? "  REGRESSION" : "");
+        }
+        for (String name : base.keySet())
+            if (!current.containsKey(name))
+                System.out.printf("%-18s %10.2f %10s %8s%n", name, base.get(name)/1e6, "-", "missing");
+
+        if (regressions > 0) {
+            System.out.println(regressions+" script(s) slower than the "+threshold+"% threshold.");
+            System.exit(1);
+        }
+    }
+
+    // script -> p50 from a result file
+    private static Map<String, Long> medians(Path file) throws IOException {
+        Map<String, Long> medians = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            if (line.isBlank() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t");
+            if (fields.length < 6)
+                throw new IOException(file+": malformed result line '"+line+"'.");
+            medians.put(fields[0], Long.parseLong(fields[3]));
+        }
+        return medians;
+    }
+}
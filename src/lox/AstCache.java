@@ -0,0 +1,655 @@
+package lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// on-disk cache of resolved programs (--cache).
+// the Stmt/Expr tree is written in pre-order as a tag byte per node
+// followed by its fields; variable nodes also carry the depth the
+// Resolver gave them, so a hit skips scanning, parsing and resolving.
+// files are keyed by the SHA-256 of the source, so an edited script
+// simply misses and gets a new entry.
+// a cached tree runs as whoever loads it, so the cache is per user
+// ($XDG_CACHE_HOME/jlox or ~/.cache/jlox, made 0700) and neither the dir
+// nor an entry is trusted unless it's ours and nobody else can write it.
+class AstCache {
+    private static final int MAGIC = 0x4a4c4f58; // "JLOX"
+    // bump whenever the AST or this format changes
+    private static final int VERSION = 4;
+
+    private final Path dir;
+
+    private static final Set<PosixFilePermission> SHARED = Set.of(
+            PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE);
+
+    AstCache() {
+        this(defaultDir());
+    }
+
+    private static Path defaultDir() {
+        String xdg = System.getenv("XDG_CACHE_HOME");
+        if (xdg != null && Paths.get(xdg).isAbsolute())
+            return Paths.get(xdg, "jlox");
+        return Paths.get(System.getProperty("user.home"), ".cache", "jlox");
+    }
+
+    AstCache(Path dir) {
+        this.dir = dir;
+    }
+
+    // returns null on a miss or if the entry can't be read for any reason
+    List<Stmt> load(byte[] source, Interpreter interpreter) {
+        Path file = dir.resolve(key(source));
+        if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) return null;
+        if (!trusted(dir) || !trusted(file)) return null;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            return new Reader(in, interpreter).readStmts();
+        }catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // best effort: failing to write the cache never fails the run.
+    // written to a temp file first so a concurrent run never sees half an entry.
+    void store(byte[] source, List<Stmt> stmts, Interpreter interpreter) {
+        try {
+            if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS))
+                Files.createDirectories(dir, ownerOnly("rwx------"));
+            if (!trusted(dir)) return;
+            Path tmp = Files.createTempFile(dir, "ast", ".tmp", ownerOnly("rw-------"));
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                new Writer(out, interpreter).writeStmts(stmts);
+            }
+            Files.move(tmp, dir.resolve(key(source)), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+        }catch (IOException e) {
+            // ignore, just means no cache next time
+        }
+    }
+
+    // owned by us, not a symlink, and not writable by group or others.
+    // only ownership is checked where the file system isn't POSIX.
+    private static boolean trusted(Path path) {
+        try {
+            UserPrincipal me = path.getFileSystem().getUserPrincipalLookupService()
+                                    .lookupPrincipalByName(System.getProperty("user.name"));
+            if (!isPosix(path))
+                return Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).equals(me);
+            PosixFileAttributes attrs = Files.readAttributes(path, PosixFileAttributes.class,
+                                                            LinkOption.NOFOLLOW_LINKS);
+            return !attrs.isSymbolicLink() && attrs.owner().equals(me)
+                    && attrs.permissions().stream().noneMatch(SHARED::contains);
+        }catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private FileAttribute<?>[] ownerOnly(String permissions) {
+        if (!isPosix(dir))
+            return new FileAttribute<?>[0];
+        return new FileAttribute<?>[] {
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions))
+        };
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    private static String key(byte[] source) {
+        return hash(source)+".ast";
+    }
+
+    // hex SHA-256 of a script, also keys PreparedScript's cache
+    static String hash(byte[] source) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(source);
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash)
+                builder.append(String.format("%02x", b));
+            return builder.toString();
+        }catch (NoSuchAlgorithmException e) {
+            // every JVM has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // node tags, shared by Writer and Reader.
+    // 0 is reserved for a null Expr/Stmt.
+    private static final int NULL = 0,
+            ASSIGN = 1, ASSIGN_CALLER = 2, COMPOUND = 3, COMPOUND_CALLER = 4, LOGICAL = 5,
+            BINARY = 6, UNARY = 7, CALL = 8, GET = 9, GROUP = 10, LITERAL = 11, VARIABLE = 12,
+            ASYNC = 13, AWAIT = 14,
+            IF = 20, PRINT = 21, RETURN = 22, BREAK = 23, WHILE = 24, BLOCK = 25,
+            EXPRESSION = 26, VAR = 27, ARRAY = 28, FUNCTION = 29, PAR_FOR = 30;
+
+    // literal kinds
+    private static final int NIL = 0, NUMBER = 1, STRING = 2, BOOLEAN = 3;
+
+    private static class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final DataOutputStream out;
+        private final Interpreter interpreter;
+
+        Writer(DataOutputStream out, Interpreter interpreter) {
+            this.out = out;
+            this.interpreter = interpreter;
+        }
+
+        void writeStmts(List<Stmt> stmts) throws IOException {
+            try {
+                stmts(stmts);
+            }catch (WriteError e) {
+                throw e.cause;
+            }
+        }
+
+        // visitors can't throw checked exceptions, so IOExceptions
+        // are tunneled out through this
+        private static class WriteError extends RuntimeException {
+            final IOException cause;
+
+            WriteError(IOException cause) {
+                super(null, null, false, false);
+                this.cause = cause;
+            }
+        }
+
+        private void tag(int tag) {
+            try {
+                out.writeByte(tag);
+            }catch (IOException e) {
+                throw new WriteError(e);
+            }
+        }
+
+        private void integer(int value) {
+            try {
+                out.writeInt(value);
+            }catch (IOException e) {
+                throw new WriteError(e);
+            }
+        }
+
+        private void token(Token token) {
+            try {
+                out.writeByte(token.type.ordinal());
+                out.writeUTF(token.lexeme);
+                out.writeInt(token.line);
+                literal(token.literal);
+            }catch (IOException e) {
+                throw new WriteError(e);
+            }
+        }
+
+        private void literal(Object value) throws IOException {
+            if (value == null)
+                out.writeByte(NIL);
+            else if (value instanceof Double d) {
+                out.writeByte(NUMBER);
+                out.writeDouble(d);
+            }
+            else if (value instanceof String str) {
+                out.writeByte(STRING);
+                out.writeUTF(str);
+            }
+            else {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean)value);
+            }
+        }
+
+        // -1 = global
+        private void depth(Expr expr) {
+            Integer depth = interpreter.localDepth(expr);
+            integer(depth == null ? -1 : depth);
+        }
+
+        private void expr(Expr expr) {
+            if (expr == null) tag(NULL);
+            else expr.accept(this);
+        }
+
+        // the line goes ahead of the tag since the visitors write the tag
+        private void stmt(Stmt stmt) {
+            if (stmt == null) {
+                integer(0);
+                tag(NULL);
+                return;
+            }
+            integer(stmt.line);
+            stmt.accept(this);
+        }
+
+        private void exprs(List<Expr> exprs) {
+            if (exprs == null) {
+                integer(-1);
+                return;
+            }
+            integer(exprs.size());
+            for (Expr expr : exprs)
+                expr(expr);
+        }
+
+        private void stmts(List<Stmt> stmts) {
+            integer(stmts.size());
+            for (Stmt stmt : stmts)
+                stmt(stmt);
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            tag(ASSIGN);
+            token(expr.name);
+            expr(expr.value);
+            depth(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignCallerExpr(Expr.AssignCaller expr) {
+            tag(ASSIGN_CALLER);
+            expr(expr.callee);
+            exprs(expr.arguments);
+            token(expr.error);
+            expr(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitCompoundExpr(Expr.Compound expr) {
+            tag(COMPOUND);
+            token(expr.name);
+            token(expr.op);
+            expr(expr.value);
+            depth(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitCompoundCallerExpr(Expr.CompoundCaller expr) {
+            tag(COMPOUND_CALLER);
+            expr(expr.callee);
+            exprs(expr.arguments);
+            token(expr.error);
+            token(expr.op);
+            expr(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            tag(LOGICAL);
+            expr(expr.left);
+            token(expr.op);
+            expr(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            tag(BINARY);
+            expr(expr.left);
+            token(expr.op);
+            expr(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            tag(UNARY);
+            token(expr.op);
+            expr(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            tag(CALL);
+            expr(expr.callee);
+            exprs(expr.arguments);
+            token(expr.error);
+            return null;
+        }
+
+        @Override
+        public Void visitAsyncExpr(Expr.Async expr) {
+            tag(ASYNC);
+            token(expr.keyword);
+            expr(expr.call);
+            return null;
+        }
+
+        @Override
+        public Void visitAwaitExpr(Expr.Await expr) {
+            tag(AWAIT);
+            token(expr.keyword);
+            expr(expr.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            tag(GET);
+            expr(expr.caller);
+            token(expr.property);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupExpr(Expr.Group expr) {
+            tag(GROUP);
+            expr(expr.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            tag(LITERAL);
+            try {
+                literal(expr.val);
+            }catch (IOException e) {
+                throw new WriteError(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            tag(VARIABLE);
+            token(expr.name);
+            depth(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            tag(IF);
+            expr(stmt.condition);
+            stmt(stmt.thenBranch);
+            stmt(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            tag(PRINT);
+            expr(stmt.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            tag(RETURN);
+            token(stmt.keyword);
+            expr(stmt.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt) {
+            tag(BREAK);
+            token(stmt.keyword);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            tag(WHILE);
+            expr(stmt.condition);
+            stmt(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitParForStmt(Stmt.ParFor stmt) {
+            tag(PAR_FOR);
+            token(stmt.keyword);
+            token(stmt.name);
+            expr(stmt.lo);
+            expr(stmt.hi);
+            stmt(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            tag(BLOCK);
+            stmts(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            tag(EXPRESSION);
+            expr(stmt.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            tag(VAR);
+            token(stmt.name);
+            expr(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitArrayStmt(Stmt.Array stmt) {
+            tag(ARRAY);
+            token(stmt.name);
+            expr(stmt.length);
+            exprs(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            tag(FUNCTION);
+            token(stmt.name);
+            integer(stmt.params.size());
+            for (Token param : stmt.params)
+                token(param);
+            stmts(stmt.body);
+            return null;
+        }
+    }
+
+    private static class Reader {
+        private static final TokenType[] TYPES = TokenType.values();
+
+        private final DataInputStream in;
+        private final Interpreter interpreter;
+
+        Reader(DataInputStream in, Interpreter interpreter) {
+            this.in = in;
+            this.interpreter = interpreter;
+        }
+
+        List<Stmt> readStmts() throws IOException {
+            int size = in.readInt();
+            List<Stmt> stmts = new ArrayList<>(size);
+            for (int i=0; i<size; i++)
+                stmts.add(stmt());
+            return stmts;
+        }
+
+        private List<Expr> exprs() throws IOException {
+            int size = in.readInt();
+            if (size < 0) return null;
+            List<Expr> exprs = new ArrayList<>(size);
+            for (int i=0; i<size; i++)
+                exprs.add(expr());
+            return exprs;
+        }
+
+        private Token token() throws IOException {
+            TokenType type = TYPES[in.readUnsignedByte()];
+            String lexeme = in.readUTF();
+            int line = in.readInt();
+            return new Token(type, lexeme, literal(), line);
+        }
+
+        private Object literal() throws IOException {
+            return switch (in.readUnsignedByte()) {
+                case NIL -> null;
+                case NUMBER -> in.readDouble();
+                case STRING -> in.readUTF();
+                case BOOLEAN -> in.readBoolean();
+                default -> throw new IOException("Bad literal in AST cache.");
+            };
+        }
+
+        // same as the Resolver would have done
+        private <E extends Expr> E depth(E expr) throws IOException {
+            int depth = in.readInt();
+            if (depth >= 0)
+                interpreter.resolve(expr, depth);
+            return expr;
+        }
+
+        private Expr expr() throws IOException {
+            int tag = in.readUnsignedByte();
+            return switch (tag) {
+                case NULL -> null;
+                case ASSIGN -> {
+                    Token name = token();
+                    yield depth(new Expr.Assign(name, expr()));
+                }
+                case ASSIGN_CALLER -> {
+                    Expr callee = expr();
+                    List<Expr> arguments = exprs();
+                    Token error = token();
+                    yield new Expr.AssignCaller(callee, arguments, error, expr());
+                }
+                case COMPOUND -> {
+                    Token name = token();
+                    Token op = token();
+                    yield depth(new Expr.Compound(name, op, expr()));
+                }
+                case COMPOUND_CALLER -> {
+                    Expr callee = expr();
+                    List<Expr> arguments = exprs();
+                    Token error = token();
+                    Token op = token();
+                    yield new Expr.CompoundCaller(callee, arguments, error, op, expr());
+                }
+                case LOGICAL -> {
+                    Expr left = expr();
+                    Token op = token();
+                    yield new Expr.Logical(left, op, expr());
+                }
+                case BINARY -> {
+                    Expr left = expr();
+                    Token op = token();
+                    yield new Expr.Binary(left, op, expr());
+                }
+                case UNARY -> {
+                    Token op = token();
+                    yield new Expr.Unary(op, expr());
+                }
+                case CALL -> {
+                    Expr callee = expr();
+                    List<Expr> arguments = exprs();
+                    yield new Expr.Call(callee, arguments, token());
+                }
+                case ASYNC -> {
+                    Token keyword = token();
+                    yield new Expr.Async(keyword, (Expr.Call)expr());
+                }
+                case AWAIT -> {
+                    Token keyword = token();
+                    yield new Expr.Await(keyword, expr());
+                }
+                case GET -> {
+                    Expr caller = expr();
+                    yield new Expr.Get(caller, token());
+                }
+                case GROUP -> new Expr.Group(expr());
+                case LITERAL -> new Expr.Literal(literal());
+                case VARIABLE -> depth(new Expr.Variable(token()));
+                default -> throw new IOException("Bad expression tag in AST cache: "+tag);
+            };
+        }
+
+        private Stmt stmt() throws IOException {
+            int line = in.readInt();
+            Stmt stmt = stmtNode();
+            if (stmt != null)
+                stmt.line = line;
+            return stmt;
+        }
+
+        private Stmt stmtNode() throws IOException {
+            int tag = in.readUnsignedByte();
+            return switch (tag) {
+                case NULL -> null;
+                case IF -> {
+                    Expr condition = expr();
+                    Stmt thenBranch = stmt();
+                    yield new Stmt.If(condition, thenBranch, stmt());
+                }
+                case PRINT -> new Stmt.Print(expr());
+                case RETURN -> {
+                    Token keyword = token();
+                    yield new Stmt.Return(keyword, expr());
+                }
+                case BREAK -> new Stmt.Break(token());
+                case WHILE -> {
+                    Expr condition = expr();
+                    yield new Stmt.While(condition, stmt());
+                }
+                case PAR_FOR -> {
+                    Token keyword = token();
+                    Token name = token();
+                    Expr lo = expr();
+                    Expr hi = expr();
+                    yield new Stmt.ParFor(keyword, name, lo, hi, stmt());
+                }
+                case BLOCK -> new Stmt.Block(readStmts());
+                case EXPRESSION -> new Stmt.Expression(expr());
+                case VAR -> {
+                    Token name = token();
+                    yield new Stmt.Var(name, expr());
+                }
+                case ARRAY -> {
+                    Token name = token();
+                    Expr length = expr();
+                    yield new Stmt.Array(name, length, exprs());
+                }
+                case FUNCTION -> {
+                    Token name = token();
+                    int arity = in.readInt();
+                    List<Token> params = new ArrayList<>(arity);
+                    for (int i=0; i<arity; i++)
+                        params.add(token());
+                    yield new Stmt.Function(name, params, readStmts());
+                }
+                default -> throw new IOException("Bad statement tag in AST cache: "+tag);
+            };
+        }
+    }
+}
@@ -1,79 +1,204 @@
 package lox;
 
-/*
-public class AstPrinter implements Expr.Visitor<String> {
+import java.util.List;
 
-    public String print(Expr expr) {
-        return expr.accept(this);
+// prints the AST as s-expressions, e.g. "var a = 1 + 2;" -> (var a (+ 1 2))
+// used by --trace=ast
+class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
+
+    String print(Expr expr) {
+        return expr == null ? "nil" : expr.accept(this);
+    }
+
+    String print(Stmt stmt) {
+        // statements that failed to parse are null
+        return stmt == null ? "(error)" : stmt.accept(this);
     }
 
     @Override
-    public String visitUnary(Expr.Unary expr) {
-        return format(expr.op.lexeme, expr.right);
+    public String visitIfStmt(Stmt.If stmt) {
+        if (stmt.elseBranch == null)
+            return format("if", stmt.condition, stmt.thenBranch);
+        return format("if", stmt.condition, stmt.thenBranch, stmt.elseBranch);
+    }
+
+    @Override
+    public String visitPrintStmt(Stmt.Print stmt) {
+        if (stmt.expr == null) return "(print)";
+        return format("print", stmt.expr);
+    }
+
+    @Override
+    public String visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.expr == null) return "(return)";
+        return format("return", stmt.expr);
+    }
+
+    @Override
+    public String visitBreakStmt(Stmt.Break stmt) {
+        return "(break)";
+    }
+
+    @Override
+    public String visitWhileStmt(Stmt.While stmt) {
+        return format("while", stmt.condition, stmt.body);
+    }
+
+    @Override
+    public String visitParForStmt(Stmt.ParFor stmt) {
+        return format("parfor "+stmt.name.lexeme, stmt.lo, stmt.hi, stmt.body);
+    }
+
+    @Override
+    public String visitBlockStmt(Stmt.Block stmt) {
+        return format("block", stmt.statements.toArray());
+    }
+
+    @Override
+    public String visitExpressionStmt(Stmt.Expression stmt) {
+        return format(";", stmt.expr);
+    }
+
+    @Override
+    public String visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null)
+            return format("var", stmt.name.lexeme);
+        return format("var", stmt.name.lexeme, stmt.initializer);
+    }
+
+    @Override
+    public String visitArrayStmt(Stmt.Array stmt) {
+        if (stmt.initializer == null)
+            return format("arr", stmt.name.lexeme, stmt.length);
+        return format("arr", stmt.name.lexeme, stmt.length, format("init", stmt.initializer.toArray()));
+    }
+
+    @Override
+    public String visitFunctionStmt(Stmt.Function stmt) {
+        StringBuilder params = new StringBuilder("(");
+        for (Token param : stmt.params) {
+            if (params.length() > 1) params.append(" ");
+            params.append(param.lexeme);
+        }
+        params.append(")");
+        // don't force a lazy body just to print it
+        if (stmt.body instanceof LazyBody lazy && !lazy.isParsed())
+            return format("fn", stmt.name.lexeme, params, "<lazy>");
+        return format("fn", stmt.name.lexeme, params, format("block", stmt.body.toArray()));
     }
 
     @Override
-    public String visitBinary(Expr.Binary expr) {
+    public String visitAssignExpr(Expr.Assign expr) {
+        return format("=", expr.name.lexeme, expr.value);
+    }
+
+    @Override
+    public String visitAssignCallerExpr(Expr.AssignCaller expr) {
+        return format("=", format("call", expr.callee, expr.arguments.toArray()), expr.value);
+    }
+
+    @Override
+    public String visitCompoundExpr(Expr.Compound expr) {
+        if (expr.value == null)
+            return format(expr.op.lexeme, expr.name.lexeme);
+        return format(expr.op.lexeme, expr.name.lexeme, expr.value);
+    }
+
+    @Override
+    public String visitCompoundCallerExpr(Expr.CompoundCaller expr) {
+        String target = format("call", expr.callee, expr.arguments.toArray());
+        if (expr.value == null)
+            return format(expr.op.lexeme, target);
+        return format(expr.op.lexeme, target, expr.value);
+    }
+
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) {
+        return format(expr.op.lexeme, expr.left, expr.right);
+    }
+
+    @Override
+    public String visitBinaryExpr(Expr.Binary expr) {
         return format(expr.op.lexeme, expr.left, expr.right);
     }
 
     @Override
-    public String visitGroup(Expr.Group expr) {
+    public String visitUnaryExpr(Expr.Unary expr) {
+        return format(expr.op.lexeme, expr.right);
+    }
+
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        return format("call", expr.callee, expr.arguments.toArray());
+    }
+
+    @Override
+    public String visitAsyncExpr(Expr.Async expr) {
+        return format("async", expr.call);
+    }
+
+    @Override
+    public String visitAwaitExpr(Expr.Await expr) {
+        return format("await", expr.expr);
+    }
+
+    @Override
+    public String visitGetExpr(Expr.Get expr) {
+        return format(".", expr.caller, expr.property.lexeme);
+    }
+
+    @Override
+    public String visitGroupExpr(Expr.Group expr) {
         return format("group", expr.expr);
     }
 
     @Override
-    public String visitLiteral(Expr.Literal expr) {
+    public String visitLiteralExpr(Expr.Literal expr) {
         if (expr.val == null) return "nil";
+        if (expr.val instanceof String) return "\""+expr.val+"\"";
         return expr.val.toString();
     }
 
+    @Override
+    public String visitVariableExpr(Expr.Variable expr) {
+        return expr.name.lexeme;
+    }
+
     // StringBuilder is faster than concat with "+" if in loop
     // the "+" operator generates a StringBuilder at each loop iteration, so slow
-    public String format(String name, Expr... exprs) {
+    // parts can be Exprs, Stmts, or anything else (printed as is).
+    // an Object[] part is flattened, so lists can be passed with toArray().
+    private String format(String name, Object first, Object... rest) {
         StringBuilder builder = new StringBuilder();
         builder.append("(").append(name);
-        for (Expr expr : exprs) {
-            builder.append(" ");
-            builder.append(expr.accept(this));
-        }
+        append(builder, first);
+        for (Object part : rest)
+            append(builder, part);
         builder.append(")");
         return builder.toString();
     }
 
-    public static void main(String[] args) {
-        /*Expr expr = new Expr.Binary(
-                new Expr.Unary(
-                        new Token(TokenType.MINUS,"-",null,1),
-                        new Expr.Literal(123.45)),
-                new Token(TokenType.STAR, "*", null, 1),
-                new Expr.Group(
-                        new Expr.Binary(
-                                new Expr.Literal(1),
-                                new Token(TokenType.PLUS,"+",null,1),
-                                new Expr.Binary(
-                                        new Expr.Literal(1),
-                                        new Token(TokenType.STAR,"/",null,1),
-                                        new Expr.Literal(null)
-                                )
-                        )
-
-                )
-        );*/
-       /* Expr expr = new Expr.Binary(
-                new Expr.Group(
-                        new Expr.Binary(
-                                new Expr.Literal(1),
-                                new Token(TokenType.PLUS,"+",null,1),
-                                new Expr.Literal(2))
-                ),
-                new Token(TokenType.STAR,"*",null,1),
-                new Expr.Group(
-                        new Expr.Binary(
-                                new Expr.Literal(4),
-                                new Token(TokenType.MINUS,"-",null,1),
-                                new Expr.Literal(3)))
-        );
-        System.out.println(new AstPrinter().print(expr));
-    }
-}*/
\ No newline at end of file
+    private String format(String name, Object[] parts) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("(").append(name);
+        for (Object part : parts)
+            append(builder, part);
+        builder.append(")");
+        return builder.toString();
+    }
+
+    private void append(StringBuilder builder, Object part) {
+        if (part instanceof Object[] parts) {
+            for (Object p : parts)
+                append(builder, p);
+            return;
+        }
+        builder.append(" ");
+        if (part instanceof Expr expr)
+            builder.append(print(expr));
+        else if (part instanceof Stmt stmt)
+            builder.append(print(stmt));
+        else
+            builder.append(part);
+    }
+}
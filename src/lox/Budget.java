@@ -0,0 +1,133 @@
+package lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// per-execution limits, so a runaway script stops w/ a RuntimeError
+// instead of stalling or OOMing the host:
+//   fuel: loop iterations + function calls the script may make
+//   timeout: wall clock time from when the Budget is created
+//   array bytes: total backing storage of every arr declared
+// a limit <= 0 means unlimited. a Budget is used up by one execution,
+// make a new one for every run.
+// fuel and array bytes are shared by every thread of the execution (see
+// spawn): each thread's Budget is a fork() that takes fuel from the shared
+// pool FUEL_CHUNK at a time, so a tick stays a compare and a decrement
+// w/o any atomics. fuel still in a thread's chunk when it ends is lost.
+// the deadline (and cancel(), see LoxScope) is only checked every CHECK ticks.
+// natives that block (join, recv, send, await) don't tick, they wait at
+// most POLL_NANOS at a time and check() in between, so a blocked script
+// still times out (or is cancelled) w/ the same error.
+// a fork is cancelled along w/ the Budget it was forked from, so cancelling
+// an async call also stops the parfor chunks and tasks it started.
+public final class Budget {
+    private static final int CHECK = 1024;
+    private static final long FUEL_CHUNK = 4096;
+    private static final long POLL_NANOS = 50_000_000;
+
+    private final long fuel, maxArrayBytes, timeoutMillis;
+    private final long deadline;
+    // what this was forked from, null for the execution's own Budget
+    private final Budget parent;
+    // null if fuel is unlimited
+    private final AtomicLong fuelPool;
+    private final AtomicLong arrayBytes;
+    // this thread's share of the pool
+    private long fuelLeft;
+    private int untilCheck = CHECK;
+    // set from another thread when an async call is cancelled
+    private volatile boolean cancelled = false;
+
+    public Budget(long fuel, long timeoutMillis, long maxArrayBytes) {
+        this.fuel = fuel;
+        this.timeoutMillis = timeoutMillis;
+        this.maxArrayBytes = maxArrayBytes;
+        this.deadline = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis*1_000_000 : 0;
+        this.fuelPool = fuel > 0 ? new AtomicLong(fuel) : null;
+        this.arrayBytes = new AtomicLong();
+        this.fuelLeft = fuel > 0 ? 0 : Long.MAX_VALUE;
+        this.parent = null;
+    }
+
+    private Budget(Budget parent) {
+        this.fuel = parent.fuel;
+        this.timeoutMillis = parent.timeoutMillis;
+        this.maxArrayBytes = parent.maxArrayBytes;
+        this.deadline = parent.deadline;
+        this.fuelPool = parent.fuelPool;
+        this.arrayBytes = parent.arrayBytes;
+        this.fuelLeft = fuelPool != null ? 0 : Long.MAX_VALUE;
+        this.parent = parent;
+    }
+
+    // the same limits for another thread of the same execution
+    Budget fork() {
+        return new Budget(this);
+    }
+
+    // one loop back-edge or call, at line
+    void tick(int line) {
+        if (fuelLeft == 0) refuel(line);
+        fuelLeft--;
+        if (--untilCheck == 0) {
+            untilCheck = CHECK;
+            check(at(line));
+        }
+    }
+
+    // throws if cancelled or out of time. where is null from natives
+    void check(Token where) {
+        if (cancelled())
+            throw new Cancelled();
+        if (deadline != 0 && System.nanoTime() - deadline > 0)
+            throw new RuntimeError(where, "Timed out after "+timeoutMillis+" ms.");
+    }
+
+    // for a blocking native: check()s, then says how long to wait
+    // before coming back to check() again
+    long waitNanos() {
+        check(null);
+        if (deadline == 0) return POLL_NANOS;
+        return Math.max(1, Math.min(POLL_NANOS, deadline - System.nanoTime()));
+    }
+
+    // stops the thread using this Budget, and the ones using its forks,
+    // at their next check
+    void cancel() {
+        cancelled = true;
+    }
+
+    private boolean cancelled() {
+        for (Budget budget = this; budget != null; budget = budget.parent) {
+            if (budget.cancelled) return true;
+        }
+        return false;
+    }
+
+    private void refuel(int line) {
+        long pool = fuelPool.getAndUpdate(left -> left - Math.min(left, FUEL_CHUNK));
+        if (pool == 0)
+            throw new RuntimeError(at(line), "Out of fuel: more than "+fuel+" steps.");
+        fuelLeft = Math.min(pool, FUEL_CHUNK);
+    }
+
+    void allocate(Token name, int length) {
+        allocate(name, name.lexeme, LoxArray.bytes(length));
+    }
+
+    // arrays made by natives have no name token, the call site fills it in
+    void allocate(String what, long bytes) {
+        allocate(null, what, bytes);
+    }
+
+    private void allocate(Token where, String what, long bytes) {
+        long total = arrayBytes.addAndGet(bytes);
+        if (maxArrayBytes > 0 && total > maxArrayBytes)
+            throw new RuntimeError(where, "Array '"+what+"' exceeds the limit of "+
+                                    maxArrayBytes+" bytes of arrays.");
+    }
+
+    // only built on the way out, ticks don't allocate
+    private static Token at(int line) {
+        return new Token(TokenType.EOF, "", null, line);
+    }
+}
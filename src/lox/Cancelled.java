@@ -0,0 +1,9 @@
+package lox;
+
+// unwinds a cancelled async call (see LoxScope). not a RuntimeError, so
+// nothing reports it; the scope already has the error that caused it.
+public class Cancelled extends RuntimeException {
+    Cancelled() {
+        super(null, null, false, false);
+    }
+}
@@ -1,18 +1,34 @@
 package lox;
 
-import java.util.Map;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+// values is a plain HashMap until another thread can reach the env: spawn,
+// async and parfor call share() on the envs they hand over first, and an
+// env made inside a shared one is shared from the start. so a script that
+// never goes multi threaded never pays for a concurrent map.
+// ConcurrentHashMap can't hold null, so a shared env stores nil as NIL.
+// sharing only makes each get/assign safe on its own: x += 1 (or x = x+1)
+// is still a separate read and write, and two tasks doing it to the same
+// var can lose updates. use a sharedArray/counters slot for that.
 public class Environment {
+    private static final Object NIL = new Object();
+
     final Environment shadowing;
-    private final Map<String, Object> values = new HashMap<>();
+    // only ever swapped by share(), on the one thread that can see it
+    private Map<String, Object> values;
+    private boolean shared;
 
     Environment() {
         this.shadowing = null;
+        this.values = new HashMap<>();
     }
 
     Environment(Environment shadowing) {
         this.shadowing = shadowing;
+        this.shared = shadowing.shared;
+        this.values = shared ? new ConcurrentHashMap<>() : new HashMap<>();
     }
 
     // could make language throw error for assigning a val to a var inside a block
@@ -21,7 +37,7 @@ public class Environment {
     // not possible.
     void assign(Token name, Object value) {
         if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
+            put(name.lexeme, value);
             return;
         }
         else if (shadowing != null) {
@@ -32,26 +48,31 @@ public class Environment {
     }
 
     void assignAt(Token name, Object value, int depth) {
-        ancestor(depth).values.put(name.lexeme, value);
+        ancestor(depth).put(name.lexeme, value);
     }
 
     // returns "nil" if var initializer is not set (aka null)
     // b/c stringify().
     // only ever declare new vars in the local scope
     void define(String name, Object value) {
-        values.put(name, value);
+        put(name, value);
     }
 
     Object get(Token name) {
-        if (values.containsKey(name.lexeme))
-            return values.get(name.lexeme);
+        Object value = values.get(name.lexeme);
+        if (value != null)
+            return value == NIL ? null : value;
+        // nil in an unshared env
+        else if (values.containsKey(name.lexeme))
+            return null;
         else if (shadowing != null)
             return shadowing.get(name);
         throw new RuntimeError(name,"Undefined variable: '"+name.lexeme+"'.");
     }
 
     Object getAt(Token name, int depth) {
-        return ancestor(depth).values.get(name.lexeme);
+        Object value = ancestor(depth).values.get(name.lexeme);
+        return value == NIL ? null : value;
     }
 
     Environment ancestor(int depth) {
@@ -62,4 +83,35 @@ public class Environment {
         return cur;
     }
 
+    // makes this env and the ones it shadows safe to share, along w/ the
+    // closures of fns stored in them (another thread could call those).
+    // stops at the first shared env: everything above it is shared already.
+    // must run before the env is handed to another thread.
+    void share() {
+        for (Environment cur = this; cur != null && !cur.shared; cur = cur.shadowing) {
+            // set first, a fn stored in its own closure leads back here
+            cur.shared = true;
+            Map<String, Object> concurrent = new ConcurrentHashMap<>();
+            for (Map.Entry<String, Object> entry : cur.values.entrySet())
+                concurrent.put(entry.getKey(), entry.getValue() == null ? NIL : entry.getValue());
+            cur.values = concurrent;
+            for (Object value : concurrent.values())
+                share(value);
+        }
+    }
+
+    // for values handed to another thread: a fn's closure gets shared
+    static void share(Object value) {
+        if (value instanceof LoxFunction fn)
+            fn.share();
+    }
+
+    private void put(String name, Object value) {
+        if (shared) {
+            // a fn stored here can now be called from another thread
+            share(value);
+            if (value == null) value = NIL;
+        }
+        values.put(name, value);
+    }
 }
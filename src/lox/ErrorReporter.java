@@ -0,0 +1,56 @@
+package lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// where the Scanner, Parser, Resolver and Interpreter report errors.
+// one per LoxRuntime (i.e. per execution), so scripts running side by
+// side don't see each other's errors.
+// static errors go to out and runtime errors to err, like the original
+// jlox did.
+class ErrorReporter {
+    private final PrintStream out, err;
+    // volatile, spawned tasks report from their own threads
+    volatile boolean hadError = false;
+    volatile boolean hadRuntimeError = false;
+
+    ErrorReporter(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    // for scanning that's only done to look at the tokens, e.g. the REPL
+    // checking for a formula: only the flags are kept.
+    static ErrorReporter silent() {
+        PrintStream none = new PrintStream(OutputStream.nullOutputStream());
+        return new ErrorReporter(none, none);
+    }
+
+    // same output, own flags, for checking one part of the run (a lazy
+    // body) w/o it counting as a front end error of the whole run.
+    ErrorReporter local() {
+        return new ErrorReporter(out, err);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF)
+            report(token.line,"at end",message);
+        else
+            report(token.line, "at '"+token.lexeme+"'", message);
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void runtimeError(RuntimeError e) {
+        err.println(e.getMessage()+"\n[line "+e.token.line+"]");
+        LoxEvents.runtimeError(e);
+        hadRuntimeError = true;
+    }
+
+    private void report(int line, String where, String message) {
+        out.println("[line "+line+"] Error "+where+": "+message);
+        hadError = true;
+    }
+}
@@ -2,27 +2,67 @@ package lox;
 
 import java.util.List;
 
-abstract class Expr {
+abstract sealed class Expr permits
+        Expr.Assign,
+        Expr.AssignCaller,
+        Expr.Compound,
+        Expr.CompoundCaller,
+        Expr.Logical,
+        Expr.Binary,
+        Expr.Unary,
+        Expr.Call,
+        Expr.Async,
+        Expr.Await,
+        Expr.Get,
+        Expr.Group,
+        Expr.Literal,
+        Expr.Variable {
     interface Visitor<R> {
         R visitAssignExpr(Expr.Assign expr);
         R visitAssignCallerExpr(Expr.AssignCaller expr);
+        R visitCompoundExpr(Expr.Compound expr);
+        R visitCompoundCallerExpr(Expr.CompoundCaller expr);
         R visitLogicalExpr(Expr.Logical expr);
         R visitBinaryExpr(Expr.Binary expr);
         R visitUnaryExpr(Expr.Unary expr);
         R visitCallExpr(Expr.Call expr);
+        R visitAsyncExpr(Expr.Async expr);
+        R visitAwaitExpr(Expr.Await expr);
         R visitGetExpr(Expr.Get expr);
         R visitGroupExpr(Expr.Group expr);
         R visitLiteralExpr(Expr.Literal expr);
         R visitVariableExpr(Expr.Variable expr);
     }
 
+    static final int ASSIGN = 0;
+    static final int ASSIGN_CALLER = 1;
+    static final int COMPOUND = 2;
+    static final int COMPOUND_CALLER = 3;
+    static final int LOGICAL = 4;
+    static final int BINARY = 5;
+    static final int UNARY = 6;
+    static final int CALL = 7;
+    static final int ASYNC = 8;
+    static final int AWAIT = 9;
+    static final int GET = 10;
+    static final int GROUP = 11;
+    static final int LITERAL = 12;
+    static final int VARIABLE = 13;
+
+    final int kind;
+
+    Expr(int kind) {
+        this.kind = kind;
+    }
+
     abstract <R> R accept(Expr.Visitor<R> v);
 
-    static class Assign extends Expr {
+    static final class Assign extends Expr {
         final Token name;
         final Expr value;
 
         Assign(Token name, Expr value) {
+            super(ASSIGN);
             this.name = name;
             this.value = value;
         }
@@ -33,13 +73,14 @@ abstract class Expr {
         }
     }
 
-    static class AssignCaller extends Expr {
+    static final class AssignCaller extends Expr {
         final Expr callee;
         final List<Expr> arguments;
         final Token error;
         final Expr value;
 
         AssignCaller(Expr callee, List<Expr> arguments, Token error, Expr value) {
+            super(ASSIGN_CALLER);
             this.callee = callee;
             this.arguments = arguments;
             this.error = error;
@@ -52,12 +93,53 @@ abstract class Expr {
         }
     }
 
-    static class Logical extends Expr {
+    static final class Compound extends Expr {
+        final Token name;
+        final Token op;
+        final Expr value;
+
+        Compound(Token name, Token op, Expr value) {
+            super(COMPOUND);
+            this.name = name;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        <R> R accept(Expr.Visitor<R> v) {
+            return v.visitCompoundExpr(this);
+        }
+    }
+
+    static final class CompoundCaller extends Expr {
+        final Expr callee;
+        final List<Expr> arguments;
+        final Token error;
+        final Token op;
+        final Expr value;
+
+        CompoundCaller(Expr callee, List<Expr> arguments, Token error, Token op, Expr value) {
+            super(COMPOUND_CALLER);
+            this.callee = callee;
+            this.arguments = arguments;
+            this.error = error;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        <R> R accept(Expr.Visitor<R> v) {
+            return v.visitCompoundCallerExpr(this);
+        }
+    }
+
+    static final class Logical extends Expr {
         final Expr left;
         final Token op;
         final Expr right;
 
         Logical(Expr left, Token op, Expr right) {
+            super(LOGICAL);
             this.left = left;
             this.op = op;
             this.right = right;
@@ -69,12 +151,13 @@ abstract class Expr {
         }
     }
 
-    static class Binary extends Expr {
+    static final class Binary extends Expr {
         final Expr left;
         final Token op;
         final Expr right;
 
         Binary(Expr left, Token op, Expr right) {
+            super(BINARY);
             this.left = left;
             this.op = op;
             this.right = right;
@@ -86,11 +169,12 @@ abstract class Expr {
         }
     }
 
-    static class Unary extends Expr {
+    static final class Unary extends Expr {
         final Token op;
         final Expr right;
 
         Unary(Token op, Expr right) {
+            super(UNARY);
             this.op = op;
             this.right = right;
         }
@@ -101,12 +185,13 @@ abstract class Expr {
         }
     }
 
-    static class Call extends Expr {
+    static final class Call extends Expr {
         final Expr callee;
         final List<Expr> arguments;
         final Token error;
 
         Call(Expr callee, List<Expr> arguments, Token error) {
+            super(CALL);
             this.callee = callee;
             this.arguments = arguments;
             this.error = error;
@@ -118,11 +203,44 @@ abstract class Expr {
         }
     }
 
-    static class Get extends Expr {
+    static final class Async extends Expr {
+        final Token keyword;
+        final Expr.Call call;
+
+        Async(Token keyword, Expr.Call call) {
+            super(ASYNC);
+            this.keyword = keyword;
+            this.call = call;
+        }
+
+        @Override
+        <R> R accept(Expr.Visitor<R> v) {
+            return v.visitAsyncExpr(this);
+        }
+    }
+
+    static final class Await extends Expr {
+        final Token keyword;
+        final Expr expr;
+
+        Await(Token keyword, Expr expr) {
+            super(AWAIT);
+            this.keyword = keyword;
+            this.expr = expr;
+        }
+
+        @Override
+        <R> R accept(Expr.Visitor<R> v) {
+            return v.visitAwaitExpr(this);
+        }
+    }
+
+    static final class Get extends Expr {
         final Expr caller;
         final Token property;
 
         Get(Expr caller, Token property) {
+            super(GET);
             this.caller = caller;
             this.property = property;
         }
@@ -133,10 +251,11 @@ abstract class Expr {
         }
     }
 
-    static class Group extends Expr {
+    static final class Group extends Expr {
         final Expr expr;
 
         Group(Expr expr) {
+            super(GROUP);
             this.expr = expr;
         }
 
@@ -146,10 +265,11 @@ abstract class Expr {
         }
     }
 
-    static class Literal extends Expr {
+    static final class Literal extends Expr {
         final Object val;
 
         Literal(Object val) {
+            super(LITERAL);
             this.val = val;
         }
 
@@ -159,10 +279,11 @@ abstract class Expr {
         }
     }
 
-    static class Variable extends Expr {
+    static final class Variable extends Expr {
         final Token name;
 
         Variable(Token name) {
+            super(VARIABLE);
             this.name = name;
         }
 
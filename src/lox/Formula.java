@@ -0,0 +1,206 @@
+package lox;
+
+import java.util.List;
+
+import static lox.TokenType.*;
+
+// numeric formula engine on top of ParserRPN.
+// the RPN token list is compiled once into a flat instruction array
+// which is then run on a primitive double[] stack: no boxing, no recursion,
+// no visitor calls. meant for evaluating the same formula over and over
+// with different variable bindings, e.g.
+//   Formula f = Formula.compile("(x + y) ^ 2 / 2", "x", "y");
+//   f.evaluate(1, 2);
+// only numbers, variables, parentheses, unary minus and the binary
+// operators that ParserRPN knows are supported.
+// comparisons push 1 for true and 0 for false.
+// a compiled Formula is immutable, so it can be shared between threads.
+public class Formula {
+    private static final byte CONST = 0, VAR = 1,
+            ADD = 2, SUB = 3, MUL = 4, DIV = 5, MOD_OP = 6, POW = 7,
+            GT = 8, GE = 9, LT = 10, LE = 11, EQ = 12, NE = 13, NEG = 14;
+
+    private final byte[] code;
+    // constant value for CONST, unused otherwise
+    private final double[] constants;
+    // variable slot for VAR, unused otherwise
+    private final int[] slots;
+    private final int arity;
+    private final int maxStack;
+
+    private Formula(byte[] code, double[] constants, int[] slots, int arity, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.slots = slots;
+        this.arity = arity;
+        this.maxStack = maxStack;
+    }
+
+    // variables are bound by position in evaluate() in the order given here
+    public static Formula compile(String source, String... variables) {
+        ErrorReporter errors = ErrorReporter.silent();
+        List<Token> tokens = new Scanner(source, errors).scanTokens();
+        if (errors.hadError)
+            throw new RuntimeError(tokens.get(tokens.size()-1), "Unexpected character in formula.");
+        checkTokens(tokens);
+        List<Token> rpn = new ParserRPN(tokens, errors).parseTokens();
+
+        int n = rpn.size();
+        byte[] code = new byte[n];
+        double[] constants = new double[n];
+        int[] slots = new int[n];
+        int depth = 0, maxStack = 0;
+        for (int i=0; i<n; i++) {
+            Token t = rpn.get(i);
+            if (t.type == NUMBER) {
+                code[i] = CONST;
+                constants[i] = (double)t.literal;
+                depth++;
+            }
+            else if (t.type == IDENTIFIER) {
+                code[i] = VAR;
+                slots[i] = slot(t, variables);
+                depth++;
+            }
+            else if (t.type == NEGATE) {
+                code[i] = NEG;
+                if (depth < 1)
+                    throw new RuntimeError(t, "Missing operand for '-'.");
+            }
+            else {
+                code[i] = opcode(t);
+                // binary ops pop 2 and push 1
+                if (depth < 2)
+                    throw new RuntimeError(t, "Missing operand for '"+t.lexeme+"'.");
+                depth--;
+            }
+            maxStack = Math.max(maxStack, depth);
+        }
+        if (depth != 1) {
+            Token last = tokens.get(tokens.size()-1);
+            throw new RuntimeError(last, depth == 0 ? "Empty formula." : "Missing operator.");
+        }
+        return new Formula(code, constants, slots, variables.length, maxStack);
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    public double evaluate(double... bindings) {
+        if (bindings.length != arity)
+            throw new IllegalArgumentException("Expected "+arity+" bindings but got "+bindings.length+".");
+        return run(bindings, 0, new double[maxStack]);
+    }
+
+    // bulk version: rows are packed back to back in bindings,
+    // arity() values per row. the stack is reused across rows.
+    public double[] evaluateAll(double[] bindings) {
+        if (arity == 0 || bindings.length % arity != 0)
+            throw new IllegalArgumentException("Bindings must hold a multiple of "+arity+" values.");
+        int rows = bindings.length/arity;
+        double[] results = new double[rows];
+        double[] stack = new double[maxStack];
+        for (int row=0; row<rows; row++)
+            results[row] = run(bindings, row*arity, stack);
+        return results;
+    }
+
+    private double run(double[] bindings, int base, double[] stack) {
+        int sp = 0;
+        for (int pc=0; pc<code.length; pc++) {
+            switch (code[pc]) {
+                case CONST -> stack[sp++] = constants[pc];
+                case VAR -> stack[sp++] = bindings[base+slots[pc]];
+                case NEG -> stack[sp-1] = -stack[sp-1];
+                default -> {
+                    double right = stack[--sp];
+                    double left = stack[sp-1];
+                    stack[sp-1] = apply(code[pc], left, right);
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    private static double apply(byte op, double left, double right) {
+        return switch (op) {
+            case ADD -> left + right;
+            case SUB -> left - right;
+            case MUL -> left * right;
+            case DIV -> left / right;
+            case MOD_OP -> left % right;
+            case POW -> Math.pow(left, right);
+            case GT -> left > right ? 1 : 0;
+            case GE -> left >= right ? 1 : 0;
+            case LT -> left < right ? 1 : 0;
+            case LE -> left <= right ? 1 : 0;
+            case EQ -> left == right ? 1 : 0;
+            case NE -> left != right ? 1 : 0;
+            default -> throw new IllegalStateException("Unknown opcode "+op);
+        };
+    }
+
+    private static byte opcode(Token t) {
+        return switch (t.type) {
+            case PLUS -> ADD;
+            case MINUS -> SUB;
+            case STAR -> MUL;
+            case SLASH -> DIV;
+            case MOD -> MOD_OP;
+            case HAT -> POW;
+            case GREATER -> GT;
+            case GREATER_EQ -> GE;
+            case LESS -> LT;
+            case LESS_EQ -> LE;
+            case EQ_EQ -> EQ;
+            case BANG_EQ -> NE;
+            default -> throw new RuntimeError(t, "Token unsupported in formula.");
+        };
+    }
+
+    private static int slot(Token name, String[] variables) {
+        for (int i=0; i<variables.length; i++) {
+            if (variables[i].equals(name.lexeme))
+                return i;
+        }
+        throw new RuntimeError(name, "Unknown variable '"+name.lexeme+"' in formula.");
+    }
+
+    // ParserRPN reports through an ErrorReporter and carries on, so reject anything
+    // it can't handle up front and throw instead, as this is an API.
+    private static void checkTokens(List<Token> tokens) {
+        int depth = 0;
+        for (Token t : tokens) {
+            switch (t.type) {
+                case NUMBER, IDENTIFIER, EOF -> {}
+                case L_PAREN -> depth++;
+                case R_PAREN -> {
+                    if (--depth < 0)
+                        throw new RuntimeError(t, "Unmatched parenthesis.");
+                }
+                default -> opcode(t);
+            }
+        }
+        if (depth != 0)
+            throw new RuntimeError(tokens.get(tokens.size()-1), "Unmatched parenthesis.");
+    }
+
+    // true if the tokens are plain arithmetic w/o variables, i.e. something
+    // like "(1 + 2) * 3" that the REPL can hand straight to compile().
+    // comparisons are left to the interpreter so they still print true/false.
+    // compile() can still throw (e.g. "1 +"), callers fall back to the
+    // interpreter then so the error is reported the usual way.
+    static boolean isArithmetic(List<Token> tokens) {
+        if (tokens.size() < 2) return false;
+        for (Token t : tokens) {
+            switch (t.type) {
+                case NUMBER, EOF, L_PAREN, R_PAREN, PLUS, MINUS, STAR, SLASH, MOD, HAT -> {}
+                default -> {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+package lox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+// per-phase wall time, CPU time and allocated bytes (--stats, --stats=json).
+// CPU and allocation counters come from the HotSpot ThreadMXBean and only
+// cover the current thread, which is the one running the script.
+// phases don't nest: lazily parsed function bodies count as execute.
+class Instrumentation {
+    enum Phase {
+        CACHE("cache"), SCAN("scan"), PARSE("parse"), RESOLVE("resolve"), EXECUTE("execute");
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private final boolean cpuSupported = THREADS.isCurrentThreadCpuTimeSupported();
+    private final boolean allocSupported = THREADS.isThreadAllocatedMemorySupported();
+
+    private final int[] calls = new int[Phase.values().length];
+    private final long[] wall = new long[calls.length];
+    private final long[] cpu = new long[calls.length];
+    private final long[] allocated = new long[calls.length];
+
+    // readings taken by start()
+    private long startWall, startCpu, startAllocated;
+
+    Instrumentation() {
+        if (allocSupported) THREADS.setThreadAllocatedMemoryEnabled(true);
+        if (cpuSupported) THREADS.setThreadCpuTimeEnabled(true);
+    }
+
+    void start() {
+        startCpu = cpuSupported ? THREADS.getCurrentThreadCpuTime() : 0;
+        startAllocated = allocSupported ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+        startWall = System.nanoTime();
+    }
+
+    void stop(Phase phase) {
+        long now = System.nanoTime();
+        int i = phase.ordinal();
+        calls[i]++;
+        wall[i] += now - startWall;
+        if (cpuSupported)
+            cpu[i] += THREADS.getCurrentThreadCpuTime() - startCpu;
+        if (allocSupported)
+            allocated[i] += THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - startAllocated;
+    }
+
+    // unsupported counters are reported as -1 (n/a in the table)
+    void report(PrintStream out) {
+        out.printf("%-8s %6s %12s %12s %12s%n", "phase", "calls", "wall ms", "cpu ms", "alloc KB");
+        long totalWall = 0, totalCpu = 0, totalAllocated = 0;
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            if (calls[i] == 0) continue;
+            out.printf("%-8s %6d %12.3f %12s %12s%n", phase.label, calls[i], wall[i]/1e6,
+                        cpuSupported ? String.format("%.3f", cpu[i]/1e6) : "n/a",
+                        allocSupported ? String.format("%.1f", allocated[i]/1024.) : "n/a");
+            totalWall += wall[i];
+            totalCpu += cpu[i];
+            totalAllocated += allocated[i];
+        }
+        out.printf("%-8s %6s %12.3f %12s %12s%n", "total", "", totalWall/1e6,
+                    cpuSupported ? String.format("%.3f", totalCpu/1e6) : "n/a",
+                    allocSupported ? String.format("%.1f", totalAllocated/1024.) : "n/a");
+    }
+
+    void reportJson(PrintStream out) {
+        StringBuilder builder = new StringBuilder("{");
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            if (calls[i] == 0) continue;
+            if (builder.length() > 1) builder.append(",");
+            builder.append("\"").append(phase.label).append("\":{")
+                    .append("\"calls\":").append(calls[i])
+                    .append(",\"wallNanos\":").append(wall[i])
+                    .append(",\"cpuNanos\":").append(cpuSupported ? cpu[i] : -1)
+                    .append(",\"allocatedBytes\":").append(allocSupported ? allocated[i] : -1)
+                    .append("}");
+        }
+        out.println(builder.append("}"));
+    }
+}
@@ -1,40 +1,129 @@
 package lox;
 
-import java.util.HashMap;
+import java.io.PrintStream;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static lox.TokenType.*;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    final Environment globals = new Environment();
-    private Environment env = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
-
-    // for native function decl
-    Interpreter() {
-        // clock() for benchmarking
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() { return 0; }
-
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double)System.currentTimeMillis() / 1000.;
+    final ErrorReporter errors;
+    // where print goes
+    private final PrintStream out;
+    final Environment globals;
+    private Environment env;
+    // resolved depths, filled in by the Resolver (or shared, see PreparedScript).
+    // concurrent since a LazyBody may be resolved while tasks are running.
+    private final Map<Expr, Integer> locals;
+    // every task spawned in this execution, shared w/ child interpreters
+    final Queue<LoxTask> tasks;
+    // files opened in this execution and not closed yet, see finish()
+    final Set<LoxFile> files;
+    // set for --profile, null otherwise
+    Profiler profiler = null;
+    // set for --line-counts, null otherwise
+    LineCounter lineCounter = null;
+    // number of LoxFunction calls in progress, for the lox.Call JFR event
+    int callDepth = 0;
+    // execution limits, null if unlimited
+    Budget budget = null;
+    // async calls started by the current function call, null until the first
+    LoxScope scope = null;
+    // token of the call being made, for natives that need to know where
+    // they were called from after the call returns (spawn)
+    Token callSite = null;
+
+    Interpreter(ErrorReporter errors, PrintStream out) {
+        this(errors, out, new ConcurrentHashMap<>());
+    }
+
+    Interpreter(ErrorReporter errors, PrintStream out, Map<Expr, Integer> locals) {
+        this.errors = errors;
+        this.out = out;
+        this.locals = locals;
+        this.globals = new Environment();
+        this.env = globals;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.files = ConcurrentHashMap.newKeySet();
+        Natives.define(globals);
+    }
+
+    // for a spawned task or parfor chunk: same globals, resolved depths,
+    // errors and limits, but its own env and call depth. the profiler and
+    // line counters are single threaded, so children aren't profiled or counted.
+    // env (and so the globals) is shared here, before the child's thread starts.
+    private Interpreter(Interpreter parent, Environment env) {
+        env.share();
+        this.errors = parent.errors;
+        this.out = parent.out;
+        this.locals = parent.locals;
+        this.globals = parent.globals;
+        this.env = env;
+        this.tasks = parent.tasks;
+        this.files = parent.files;
+        this.budget = parent.budget != null ? parent.budget.fork() : null;
+    }
+
+    Interpreter child() {
+        return new Interpreter(this, globals);
+    }
+
+    // closes the current scope (see LoxScope) and goes back to enclosing.
+    // throws the first failed async call if completed normally.
+    void endScope(LoxScope enclosing, boolean completed) {
+        LoxScope scope = this.scope;
+        this.scope = enclosing;
+        if (scope != null)
+            scope.close(completed);
+    }
+
+    // end of a run: waits for every spawned task, including ones spawned
+    // meanwhile, so a run doesn't end w/ tasks still going. then closes
+    // the files the script left open, so buffered writes aren't lost.
+    void finish() {
+        LoxTask task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.await();
+            }catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
-
-            @Override
-            public String toString() { return "<native fn>"; }
-        });
+        }
+        for (LoxFile file : files) {
+            files.remove(file);
+            try {
+                file.close();
+            }catch (RuntimeError e) {
+                errors.runtimeError(new RuntimeError(new Token(EOF, "", null, 0), e.getMessage()));
+            }
+        }
     }
 
     public void interpret(List<Stmt> statements) {
+        boolean completed = false;
         try {
-            for (Stmt stmt : statements)
-                execute(stmt);
+            try {
+                for (Stmt stmt : statements)
+                    execute(stmt);
+                completed = true;
+            }finally {
+                endScope(null, completed);
+            }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            errors.runtimeError(error);
+        }catch (StackOverflowError e) {
+            // unbounded recursion, reported at the last call made. the
+            // finally blocks on the way out have unwound the call state
+            Token at = callSite != null ? callSite : new Token(EOF, "", null, 0);
+            errors.runtimeError(new RuntimeError(at, "Stack overflow."));
         }
     }
 
@@ -66,7 +155,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 initElems.add(evaluate(expr));
             }
         }
-        LoxArray array = new LoxArray(stmt, len, initElems);
+        if (budget != null) budget.allocate(stmt.name, len);
+        LoxArray array = new LoxArray(stmt.name, len, initElems);
         env.define(stmt.name.lexeme, array);
         return null;
     }
@@ -109,12 +199,69 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
         try {
-            while (isTruthy(evaluate(stmt.condition)))
+            while (isTruthy(evaluate(stmt.condition))) {
+                if (budget != null) budget.tick(stmt.line);
+                if (lineCounter != null) lineCounter.loop();
                 execute(stmt.body);
+            }
         }catch (Break b) {}
         return null;
     }
 
+    // the range is split into a few chunks per pool thread, each run by a
+    // child interpreter sharing the enclosing env. every iteration gets its
+    // own env w/ the loop var, like a block. the Resolver has made sure the
+    // body doesn't assign to anything outside it (arrays aside), but fns
+    // called from the body can still race on shared vars.
+    // the first error thrown by a chunk is rethrown here.
+    @Override
+    public Void visitParForStmt(Stmt.ParFor stmt) {
+        Object lo = evaluate(stmt.lo);
+        Object hi = evaluate(stmt.hi);
+        if (!(lo instanceof Double) || !(hi instanceof Double))
+            throw new RuntimeError(stmt.keyword, "parfor bounds must be numbers.");
+        double first = (double)lo;
+        long n = (long)Math.ceil((double)hi - first);
+        if (n <= 0) return null;
+
+        long chunks = Math.min(n, ForkJoinPool.getCommonPoolParallelism()*4L);
+        if (chunks == 1) {
+            parforRange(stmt, first, 0, n);
+            return null;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (long c=0; c<chunks; c++) {
+            long from = n*c/chunks, to = n*(c+1)/chunks;
+            Interpreter child = new Interpreter(this, env);
+            tasks.add(ForkJoinTask.adapt(() -> child.parforChunk(stmt, first, from, to)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        return null;
+    }
+
+    // async calls made in a chunk belong to the chunk
+    private void parforChunk(Stmt.ParFor stmt, double first, long from, long to) {
+        boolean completed = false;
+        try {
+            parforRange(stmt, first, from, to);
+            completed = true;
+        }finally {
+            endScope(null, completed);
+        }
+    }
+
+    // iterations [from, to) of the parfor, i.e. var = first+from ...
+    private void parforRange(Stmt.ParFor stmt, double first, long from, long to) {
+        List<Stmt> body = List.of(stmt.body);
+        for (long k=from; k<to; k++) {
+            if (budget != null) budget.tick(stmt.line);
+            if (lineCounter != null) lineCounter.loop();
+            Environment iteration = new Environment(env);
+            iteration.define(stmt.name.lexeme, first+k);
+            executeBlock(body, iteration);
+        }
+    }
+
     // block chain ha. ha.
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
@@ -138,9 +285,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         if (stmt.expr != null)
-            System.out.println(stringify(evaluate(stmt.expr)));
+            out.println(stringify(evaluate(stmt.expr)));
         else
-            System.out.println();
+            out.println();
         return null;
     }
 
@@ -166,7 +313,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitAssignCallerExpr(Expr.AssignCaller expr) {
         Object callee = evaluate(expr.callee);
-        if (!(callee instanceof LoxArray array))
+        if (!(callee instanceof LoxArray) && !(callee instanceof LoxSharedArray))
             throw new RuntimeError(expr.error, "Object cannot be assigned to.");
         // index checks happen inside LoxArray
         // currently a list, but it should only have 1 elem
@@ -175,10 +322,73 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         for (Expr arg : expr.arguments)
             index.add(evaluate(arg));
         Object val = evaluate(expr.value);
+        if (callee instanceof LoxSharedArray shared)
+            shared.assign(expr.error, index.get(0), val);
+        else
+            ((LoxArray)callee).assign(index, val);
+        return val;
+    }
+
+    // read-modify-write on a variable: find the owning env once,
+    // then read and write the slot in that env directly.
+    // not atomic: tasks doing this to the same var can lose updates,
+    // see Environment.
+    @Override
+    public Object visitCompoundExpr(Expr.Compound expr) {
+        Integer depth = locals.get(expr);
+        Environment target = depth != null ? env.ancestor(depth) : globals;
+        Object val = compound(expr.op, target.get(expr.name), expr.value);
+        target.assign(expr.name, val);
+        return val;
+    }
+
+    // same as visitAssignCallerExpr but the callee and index are only
+    // evaluated once for both the read and the write.
+    // on a shared array the read-modify-write is a single atomic add.
+    @Override
+    public Object visitCompoundCallerExpr(Expr.CompoundCaller expr) {
+        Object callee = evaluate(expr.callee);
+        if (callee instanceof LoxSharedArray shared)
+            return sharedCompound(expr, shared);
+        if (!(callee instanceof LoxArray array))
+            throw new RuntimeError(expr.error, "Object cannot be assigned to.");
+        List<Object> index = new ArrayList<>();
+        for (Expr arg : expr.arguments)
+            index.add(evaluate(arg));
+        Object val = compound(expr.op, array.call(this, index), expr.value);
         array.assign(index, val);
         return val;
     }
 
+    private Object sharedCompound(Expr.CompoundCaller expr, LoxSharedArray shared) {
+        Object index = evaluate(expr.arguments.get(0));
+        double delta = 1.;
+        if (expr.value != null) {
+            Object right = evaluate(expr.value);
+            checkNumberOperand(expr.op, right);
+            delta = (double)right;
+        }
+        if (expr.op.type == MINUS_EQ || expr.op.type == MINUS_MINUS)
+            delta = -delta;
+        return shared.add(expr.error, index, delta);
+    }
+
+    // numeric only, same as the old Binary desugaring.
+    // a null value means "++" or "--", so no rhs to evaluate.
+    private Object compound(Token op, Object current, Expr value) {
+        double delta = 1.;
+        if (value != null) {
+            Object right = evaluate(value);
+            checkNumberOperand(current, op, right);
+            delta = (double)right;
+        }
+        else
+            checkNumberOperand(op, current);
+        if (op.type == PLUS_EQ || op.type == PLUS_PLUS)
+            return (double)current + delta;
+        return (double)current - delta;
+    }
+
     @Override
     public Object visitCallExpr(Expr.Call expr) {
         // if Expr.Variable, get associated val
@@ -192,10 +402,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         // if LoxArray, args is a list with just 1 entry for the index
         for (Expr argument : expr.arguments)
             args.add(evaluate(argument));
-        if (args.size() != object.arity())
-            throw new RuntimeError(expr.error, "Expected " + object.arity() +
-                                    " arguments but got " + args.size() + ".");
-        return object.call(this, args);
+        checkArity(expr.error, object, args.size());
+        // the caller's frame is now at this call
+        if (profiler != null) profiler.line(expr.error.line);
+        callSite = expr.error;
+        try {
+            return object.call(this, args);
+        }catch (RuntimeError e) {
+            // natives don't know where they're called from
+            if (e.token == null) throw new RuntimeError(expr.error, e.getMessage());
+            throw e;
+        }
     }
 
     @Override
@@ -246,14 +463,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 else
                     throw new RuntimeError(expr.op,"Operands must be numbers and/or strings.");
             }
-            case MINUS, MINUS_MINUS -> {
+            case MINUS -> {
                 checkNumberOperand(left, expr.op, right);
                 yield (double)left - (double)right;
             }
-            case PLUS_EQ, PLUS_PLUS -> {
-                checkNumberOperand(left, expr.op, right);
-                yield (double)left + (double)right;
-            }
             case STAR -> {
                 checkNumberOperand(left, expr.op, right);
                 yield (double)left * (double)right;
@@ -305,11 +518,49 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         };
     }
 
+    // natives w/ a negative arity take any number of arguments
+    private void checkArity(Token where, LoxCallable callable, int count) {
+        if (callable.arity() >= 0 && count != callable.arity())
+            throw new RuntimeError(where, "Expected " + callable.arity() +
+                                    " arguments but got " + count + ".");
+    }
+
+    // the callee and args are evaluated here, only the call itself
+    // runs on another thread
+    @Override
+    public Object visitAsyncExpr(Expr.Async expr) {
+        Expr.Call call = expr.call;
+        Object callee = evaluate(call.callee);
+        if (!(callee instanceof LoxCallable fn))
+            throw new RuntimeError(call.error, "Object not callable.");
+        List<Object> args = new ArrayList<>();
+        for (Expr argument : call.arguments)
+            args.add(evaluate(argument));
+        checkArity(call.error, fn, args.size());
+        if (scope == null)
+            scope = new LoxScope();
+        return scope.fork(this, fn, args, call.error);
+    }
+
+    @Override
+    public Object visitAwaitExpr(Expr.Await expr) {
+        if (!(evaluate(expr.expr) instanceof LoxFuture future))
+            throw new RuntimeError(expr.keyword, "Can only await an async call.");
+        try {
+            return future.await(budget);
+        }catch (RuntimeError e) {
+            if (e.token == null) throw new RuntimeError(expr.keyword, e.getMessage());
+            throw e;
+        }
+    }
+
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         Object caller = evaluate(expr.caller);
         if (caller instanceof LoxArray)
             return ((LoxArray)caller).get(expr.property);
+        if (caller instanceof LoxSharedArray shared)
+            return shared.get(expr.property);
         throw new RuntimeError(expr.property,"Only arrays have properties.");
     }
 
@@ -323,7 +574,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return expr.val;
     }
 
+    // plain accept() dispatch. switching on the nodes' kind tag measured
+    // ~3x slower on fib: execute/evaluate grow too big for the JIT to
+    // inline, where each accept() is a tiny method it inlines per call site.
     private void execute(Stmt stmt) {
+        if (lineCounter != null) lineCounter.count(stmt.line);
+        // so samples land on the statement running, not the fn's declaration
+        if (profiler != null && stmt.line != 0) profiler.line(stmt.line);
         stmt.accept(this);
     }
 
@@ -336,7 +593,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         locals.put(expr, depth);
     }
 
-    private String stringify(Object obj) {
+    // null if global, used to save resolved depths (see AstCache)
+    Integer localDepth(Expr expr) {
+        return locals.get(expr);
+    }
+
+    String stringify(Object obj) {
         if (obj == null) return "nil";
         else if (obj instanceof Double) {
             String num = obj.toString();
@@ -0,0 +1,86 @@
+package lox;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+// body of a function declared in lazy mode (Parser built with lazy=true).
+// the Parser only brace-matches the body and records its token range;
+// the Resolver only snapshots its scopes at the declaration.
+// the real parse + resolve happen the first time the body is read,
+// i.e. on the first call of the LoxFunction, so code that never runs
+// costs no more than a scan over its tokens.
+// it's a List so Stmt.Function and LoxFunction don't need to know about it.
+class LazyBody extends AbstractList<Stmt> {
+    private final TokenBuffer tokens;
+    // token range [start, end) between the braces
+    final int start, end;
+
+    // filled in by the Resolver through defer()
+    private Interpreter interpreter;
+    private Stmt.Function function;
+    private Stack<Map<String,Boolean>> scopes;
+    private boolean curLoop;
+    private int parforScope;
+
+    private volatile List<Stmt> body;
+
+    LazyBody(TokenBuffer tokens, int start, int end) {
+        this.tokens = tokens;
+        this.start = start;
+        this.end = end;
+    }
+
+    // scopes must be a copy: names declared after the function in the same
+    // block must not be visible to it, same as with eager resolving.
+    void defer(Interpreter interpreter, Stmt.Function function,
+               Stack<Map<String,Boolean>> scopes, boolean curLoop, int parforScope) {
+        this.interpreter = interpreter;
+        this.function = function;
+        this.scopes = scopes;
+        this.curLoop = curLoop;
+        this.parforScope = parforScope;
+    }
+
+    boolean isParsed() {
+        return body != null;
+    }
+
+    // errors in the body only surface now. they're printed like any other
+    // syntax error, but by then the run is past its front end, so the call
+    // fails w/ a RuntimeError (exit 70, same as any other failed call)
+    // instead of flagging the run's hadError. the null token makes
+    // visitCallExpr (or spawn/async) put it at the call site.
+    private List<Stmt> body() {
+        List<Stmt> stmts = body;
+        if (stmts != null) return stmts;
+        synchronized (this) {
+            if (body != null) return body;
+            // own flags, so errors reported earlier in the run don't
+            // count against this body
+            ErrorReporter errors = interpreter.errors.local();
+            stmts = new Parser(tokens, start, true, errors).functionBody();
+            if (!errors.hadError) {
+                Resolver resolver = new Resolver(interpreter, errors, scopes, curLoop, parforScope);
+                resolver.resolveFunctionBody(function, stmts);
+            }
+            if (errors.hadError)
+                throw new RuntimeError(null, "Invalid body in function '"+function.name.lexeme+"'.");
+            // the snapshot isn't needed anymore
+            scopes = null;
+            body = stmts;
+            return stmts;
+        }
+    }
+
+    @Override
+    public Stmt get(int index) {
+        return body().get(index);
+    }
+
+    @Override
+    public int size() {
+        return body().size();
+    }
+}
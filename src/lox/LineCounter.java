@@ -0,0 +1,83 @@
+package lox;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+// per-line execution counts (--line-counts).
+// the Interpreter calls count(stmt.line) for every statement it executes;
+// statements carry their line from the Parser (see Stmt.line).
+// a line counts once each time execution arrives at it, not once per
+// statement on it: "if n<2: return n;" is one hit. so consecutive
+// statements on the last counted line are skipped, w/ the last line
+// saved per call frame (enter/leave) and reset on each loop iteration,
+// so a one-line loop still counts every pass.
+// the report is the source w/ a count and % of all executions per line,
+// followed by the hottest lines.
+class LineCounter {
+    private static final int HOTTEST = 10;
+
+    private long[] counts = new long[256];
+    // last line counted in the current frame, 0 for none
+    private int last = 0;
+
+    void count(int line) {
+        if (line == last) return;
+        last = line;
+        if (line >= counts.length)
+            counts = Arrays.copyOf(counts, Math.max(line+1, counts.length*2));
+        counts[line]++;
+    }
+
+    // a call starts a new frame, returns what leave() needs
+    int enter() {
+        int saved = last;
+        last = 0;
+        return saved;
+    }
+
+    void leave(int saved) {
+        last = saved;
+    }
+
+    // loop back-edge
+    void loop() {
+        last = 0;
+    }
+
+    void report(String source, PrintStream out) {
+        String[] lines = source.split("\r?\n", -1);
+        long total = 0;
+        for (long count : counts)
+            total += count;
+
+        out.printf("%12s %7s %5s  %s%n", "count", "%", "line", "source");
+        for (int i=0; i<lines.length; i++) {
+            long count = countAt(i+1);
+            if (count == 0)
+                out.printf("%12s %7s %5d  %s%n", "", "", i+1, lines[i]);
+            else
+                out.printf("%12d %6.2f%% %5d  %s%n", count, percent(count, total), i+1, lines[i]);
+        }
+
+        // hottest lines: sort line numbers by count, descending
+        Integer[] order = new Integer[counts.length];
+        for (int i=0; i<order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        out.println();
+        out.println("hottest lines:");
+        for (int i=0; i<Math.min(HOTTEST, order.length) && counts[order[i]] > 0; i++) {
+            int line = order[i];
+            String text = line-1 < lines.length && line > 0 ? lines[line-1].trim() : "";
+            out.printf("%12d %6.2f%% %5d  %s%n", counts[line], percent(counts[line], total), line, text);
+        }
+    }
+
+    private long countAt(int line) {
+        return line < counts.length ? counts[line] : 0;
+    }
+
+    private static double percent(long count, long total) {
+        return total == 0 ? 0 : 100.*count/total;
+    }
+}
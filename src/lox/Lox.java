@@ -1,34 +1,153 @@
 package lox;
 
 import java.io.BufferedReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    private static final LoxRuntime runtime = new LoxRuntime();
+    // --stats=json instead of the table
+    private static boolean statsJson = false;
+    // --profile=<file>: collapsed stacks of sampled Lox frames
+    private static String profileOut = null;
+    // --line-counts[=file]: annotated source w/ per-line execution counts
+    private static String lineCountsOut = null;
+    // source of the script, kept for the line counts report
+    private static String scriptSource = null;
+    // --fuel=N, --timeout=ms, --max-array-bytes=N, see Budget
+    private static long fuel = 0, timeout = 0, maxArrayBytes = 0;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(65);
+        // server and client modes take over everything else
+        for (String arg : args) {
+            if (arg.startsWith("--server=")) {
+                if (args.length != 1) usage();
+                LoxServer.serve(arg.substring("--server=".length()));
+            }
+            else if (arg.startsWith("--client="))
+                runClient(arg.substring("--client=".length()), args);
         }
-        else if (args.length == 1)
-            runFile(args[0]);
-        else
+
+        Interpreter interpreter = runtime.interpreter();
+        boolean stream = false;
+        String script = null;
+        for (String arg : args) {
+            if (arg.equals("--stream"))
+                stream = true;
+            else if (arg.equals("--lazy"))
+                runtime.lazy = true;
+            else if (arg.equals("--cache"))
+                runtime.cache = new AstCache();
+            else if (arg.equals("--stats") || arg.equals("--stats=json")) {
+                runtime.stats = new Instrumentation();
+                statsJson = arg.endsWith("=json");
+            }
+            else if (arg.equals("--line-counts") || arg.startsWith("--line-counts=")) {
+                lineCountsOut = arg.contains("=") ? arg.substring(arg.indexOf('=')+1) : "";
+                interpreter.lineCounter = new LineCounter();
+            }
+            else if (arg.startsWith("--fuel="))
+                fuel = limit(arg);
+            else if (arg.startsWith("--timeout="))
+                timeout = limit(arg);
+            else if (arg.startsWith("--max-array-bytes="))
+                maxArrayBytes = limit(arg);
+            else if (arg.startsWith("--profile="))
+                profileOut = arg.substring("--profile=".length());
+            // must happen before Trace is loaded, see Trace
+            else if (arg.startsWith("--trace="))
+                System.setProperty("jlox.trace", arg.substring("--trace=".length()));
+            else if (arg.startsWith("--trace-out="))
+                System.setProperty("jlox.trace.out", arg.substring("--trace-out=".length()));
+            else if (script == null && !arg.startsWith("--"))
+                script = arg;
+            else
+                usage();
+        }
+        if (fuel > 0 || timeout > 0 || maxArrayBytes > 0)
+            runtime.setBudget(new Budget(fuel, timeout, maxArrayBytes));
+        // the sampler only records while interpreting, see Profiler.resume
+        if (profileOut != null) {
+            interpreter.profiler = new Profiler(1_000_000);
+            interpreter.profiler.start();
+        }
+        if (script == null)
             runREPL();
+        else if (stream)
+            runStream(script);
+        else
+            runFile(script);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: jlox [--stream] [--lazy] [--cache]"+
+                " [--trace=tokens,ast,resolve,time|all] [--trace-out=file]"+
+                " [--stats[=json]] [--profile=file] [--line-counts[=file]]"+
+                " [--fuel=steps] [--timeout=ms] [--max-array-bytes=n] [script]");
+        System.out.println("       jlox --server=socket");
+        System.out.println("       jlox --client=socket [--stream] [--lazy]"+
+                " [--fuel=steps] [--timeout=ms] [--max-array-bytes=n] script");
+        System.exit(65);
+    }
+
+    // value of a --name=N limit option
+    private static long limit(String arg) {
+        try {
+            return Long.parseLong(arg.substring(arg.indexOf('=')+1));
+        }catch (NumberFormatException e) {
+            System.out.println("Expect a number in '"+arg+"'.");
+            System.exit(65);
+            return 0;
+        }
+    }
+
+    // everything but --client=... and the script is passed on to the server
+    private static void runClient(String socket, String[] args) {
+        String script = null;
+        List<String> options = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--client="))
+                continue;
+            if (script == null && !arg.startsWith("--"))
+                script = arg;
+            else
+                options.add(arg);
+        }
+        if (script == null) usage();
+        System.exit(LoxClient.run(socket, script, options));
     }
 
     private static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        if (runtime.interpreter().lineCounter != null)
+            scriptSource = new String(bytes, Charset.defaultCharset());
+        int code;
+        if (runtime.cache != null)
+            code = runtime.runCached(bytes);
+        else
+            code = runtime.run(new String(bytes, Charset.defaultCharset()));
+        reportStats();
+        if (code != 0) System.exit(code);
+    }
+
+    private static void runStream(String path) throws IOException {
+        int code;
+        try (Reader reader = Files.newBufferedReader(Paths.get(path), Charset.defaultCharset())) {
+            code = runtime.runStream(reader);
+        }
+        // the source wasn't kept in memory, so read it again for the report
+        if (runtime.interpreter().lineCounter != null)
+            scriptSource = Files.readString(Paths.get(path), Charset.defaultCharset());
+        reportStats();
+        if (code != 0) System.exit(code);
     }
 
     private static void runREPL() throws IOException {
@@ -38,56 +157,33 @@ public class Lox {
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
-            hadError = false;
+            runtime.runLine(line, System.out);
         }
+        reportStats();
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        System.out.print("lexer: ");
-        for (Token t: tokens)
-            System.out.print(t.lexeme+" ");
-        System.out.println();
-
-        /*ParserRPN parser = new ParserRPN(tokens);
-        List<Token> output = parser.parseTokens();
-        System.out.print("RPN: ");
-        for (Token t: output) {
-            System.out.print(t.lexeme+" ");
+    // everything that's reported when a run ends
+    private static void reportStats() throws IOException {
+        Interpreter interpreter = runtime.interpreter();
+        if (interpreter.profiler != null) {
+            interpreter.profiler.stop();
+            interpreter.profiler.write(Paths.get(profileOut));
         }
-        System.out.println();*/
-
-        Parser parser = new Parser(tokens);
-        List<Stmt> stmts = parser.parse();
-        if (hadError) return;
-        //System.out.println("parser: "+new AstPrinter().print(expr));
-
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(stmts);
-        if (hadError) return;
-        interpreter.interpret(stmts);
-    }
-
-    static void runtimeError(RuntimeError e) {
-        System.err.println(e.getMessage()+"\n[line "+e.token.line+"]");
-        hadRuntimeError = true;
-    }
-
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF)
-            report(token.line,"at end",message);
+        // not supported in the REPL, there's no single source to annotate
+        if (interpreter.lineCounter != null && scriptSource != null) {
+            if (lineCountsOut.isEmpty())
+                interpreter.lineCounter.report(scriptSource, System.err);
+            else {
+                try (PrintStream out = new PrintStream(new FileOutputStream(lineCountsOut))) {
+                    interpreter.lineCounter.report(scriptSource, out);
+                }
+            }
+        }
+        Instrumentation stats = runtime.stats;
+        if (stats == null) return;
+        if (statsJson)
+            stats.reportJson(System.err);
         else
-            report(token.line, "at '"+token.lexeme+"'", message);
-    }
-
-    static void error(int line, String message) {
-        report(line, "", message);
-    }
-
-    private static void report(int line, String where, String message) {
-        System.out.println("[line "+line+"] Error "+where+": "+message);
-        hadError = true;
+            stats.report(System.err);
     }
 }
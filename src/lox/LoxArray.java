@@ -3,31 +3,36 @@ package lox;
 import java.util.List;
 
 class LoxArray implements LoxCallable {
-    private final Stmt.Array declaration;
-    private Object[] arr;
+    // arrays from natives get a synthetic name token (see Natives)
+    private final Token name;
+    // volatile, the first assignment swaps in a typed backing array and
+    // other threads must see the new one (see lockType)
+    private volatile Object[] arr;
     private final int length;
     // could add Object Type later if wanted
     private enum Type {
         NONE, DOUBLE, STRING, BOOLEAN
     }
-    private Type type = Type.NONE;
+    private volatile Type type = Type.NONE;
 
-    LoxArray(Stmt.Array declaration, int length, List<Object> initElements) {
-        this.declaration = declaration;
+    LoxArray(Token name, int length, List<Object> initElements) {
+        this.name = name;
         this.length = length;
         // if initializer is empty, all elems == nil
         // then, first assignment value sets array type.
         if (initElements != null) {
             if (initElements.size() != length)
-                throw new RuntimeError(declaration.name,"Expected "+length+" element(s)"+
+                throw new RuntimeError(name,"Expected "+length+" element(s)"+
                                         " but got "+initElements.size()+".");
             // throws error if type == NONE or if not all same type
             this.type = determineArrayType(initElements);
             // arr never null here
-            this.arr = setArrayType();
+            this.arr = setArrayType(type);
+            for (int i=0; i<length; i++)
+                arr[i] = initElements.get(i);
         }
         else
-            this.arr = new Object[length];
+            this.arr = setArrayType(type);
     }
 
     // array arg is just an index
@@ -48,43 +53,69 @@ class LoxArray implements LoxCallable {
         Type type = getType(value);
         // Type.NONE cur represents any Object not literal
         if (type == Type.NONE)
-            throw new RuntimeError(declaration.name, "Type unsupported for array assignment.");
+            throw new RuntimeError(name, "Type unsupported for array assignment.");
         // only true if initializer was null in constructor
-        if (this.type == Type.NONE) {
-            this.type = type;
-            arr = setArrayType();
-        }
+        if (this.type == Type.NONE)
+            lockType(type);
         if (type != this.type)
-            throw new RuntimeError(declaration.name, "Array is of type "+this.type.toString()+".");
+            throw new RuntimeError(name, "Array is of type "+this.type.toString()+".");
         //System.out.println(value.getClass());
         arr[ind] = value;
     }
 
-    public Object get(Token name) {
+    // first assignment wins when tasks race on it. the backing array is
+    // published before the type, so whoever sees the type sees the array.
+    // elements are only ever nil before this, so nothing needs copying.
+    private synchronized void lockType(Type type) {
+        if (this.type != Type.NONE) return;
+        arr = setArrayType(type);
+        this.type = type;
+    }
+
+    public Object get(Token property) {
         // can't return integer cuz Lox only works with Doubles!
-        if (name.lexeme.equals("len"))
+        if (property.lexeme.equals("len"))
             return (double)length;
-        throw new RuntimeError(name, "No property named "+name.lexeme+".");
+        throw new RuntimeError(property, "No property named "+property.lexeme+".");
     }
 
-    private Object[] setArrayType() {
+    private Object[] setArrayType(Type type) {
+        Object[] arr;
         if (type == Type.DOUBLE)
-            return new Double[this.length];
+            arr = new Double[this.length];
         else if (type == Type.STRING)
-            return new String[this.length];
+            arr = new String[this.length];
         else if (type == Type.BOOLEAN)
-            return new Boolean[this.length];
-        return new Object[this.length];
+            arr = new Boolean[this.length];
+        else
+            arr = new Object[this.length];
+        if (!LoxEvents.recording()) return arr;
+        LoxEvents.ArrayAllocation event = new LoxEvents.ArrayAllocation();
+        if (event.isEnabled()) {
+            event.name = name.lexeme;
+            event.type = type.toString();
+            event.length = length;
+            event.bytes = bytes(length);
+            event.commit();
+        }
+        return arr;
         //return null;
     }
 
+    // backing array size: 16 byte header + a 4 byte (compressed) reference
+    // per element. the boxed elements aren't counted.
+    static long bytes(int length) {
+        return 16 + 4L*length;
+    }
+
     private Type determineArrayType(List<Object> elements) {
-        for (int i=0; i<length-1; i++) {
-            Type curType = getType(elements.get(i));
+        Type type = getType(elements.get(0));
+        for (Object element : elements) {
+            Type curType = getType(element);
             if (curType == Type.NONE)
-                throw new RuntimeError(this.declaration.name, "Elements must be literals.");
-            if (curType != getType(arr[i+1]))
-                throw new RuntimeError(declaration.name, "Elements must be of the same type.");
+                throw new RuntimeError(name, "Elements must be literals.");
+            if (curType != type)
+                throw new RuntimeError(name, "Elements must be of the same type.");
         }
         return type;
     }
@@ -101,17 +132,17 @@ class LoxArray implements LoxCallable {
 
     private int checkIndex(Object index) {
         if (!(index instanceof Double))
-            throw new RuntimeError(declaration.name, "Index must be an integer.");
+            throw new RuntimeError(name, "Index must be an integer.");
         int ind = ((Double)index).intValue();
         if (ind < 0)
-            throw new RuntimeError(declaration.name, "Index must be non-negative.");
+            throw new RuntimeError(name, "Index must be non-negative.");
         if (ind >= length)
-            throw new RuntimeError(declaration.name,"Index out of bounds: array has length "+length+".");
+            throw new RuntimeError(name,"Index out of bounds: array has length "+length+".");
         return ind;
     }
 
     @Override
     public String toString() {
-        return "<array "+declaration.name.lexeme+">";
+        return "<array "+name.lexeme+">";
     }
 }
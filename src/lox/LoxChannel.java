@@ -0,0 +1,85 @@
+package lox;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// bounded FIFO between tasks, from channel(capacity).
+// send blocks while full, recv blocks while empty. after close, sends are
+// an error and recv drains what's left, then returns nil.
+// nil can be sent, so a nil from recv doesn't always mean closed.
+// a null budget waits for as long as it takes.
+class LoxChannel {
+    private final int capacity;
+    private final ArrayDeque<Object> buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private boolean closed = false;
+
+    // ArrayDeque can't hold null either
+    private static final Object NIL = new Object();
+
+    LoxChannel(int capacity) {
+        this.capacity = capacity;
+        this.buffer = new ArrayDeque<>(capacity);
+    }
+
+    void send(Object value, Budget budget) {
+        lock.lock();
+        try {
+            while (buffer.size() == capacity && !closed)
+                await(notFull, budget);
+            if (closed)
+                throw new RuntimeError(null, "Send on a closed channel.");
+            buffer.addLast(value == null ? NIL : value);
+            notEmpty.signal();
+        }catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(null, "Interrupted while sending.");
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    Object recv(Budget budget) {
+        lock.lock();
+        try {
+            while (buffer.isEmpty() && !closed)
+                await(notEmpty, budget);
+            if (buffer.isEmpty())
+                return null;
+            Object value = buffer.removeFirst();
+            notFull.signal();
+            return value == NIL ? null : value;
+        }catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(null, "Interrupted while receiving.");
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    private static void await(Condition condition, Budget budget) throws InterruptedException {
+        if (budget == null)
+            condition.await();
+        else
+            condition.awaitNanos(budget.waitNanos());
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel "+capacity+">";
+    }
+}
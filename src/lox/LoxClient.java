@@ -0,0 +1,60 @@
+package lox;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.List;
+
+// jlox --client=<socket> [options] script: runs script on a jlox --server
+// and relays its output and exit code, see LoxServer for the protocol.
+// the path is made absolute here since the server has its own cwd.
+class LoxClient {
+    // exit code when there's no server to talk to
+    private static final int UNAVAILABLE = 69;
+
+    static int run(String socket, String script, List<String> options) {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socket));
+            }catch (IOException e) {
+                System.err.println("Cannot connect to jlox server at '"+socket+"'.");
+                return UNAVAILABLE;
+            }
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(1+options.size());
+            out.writeUTF(Paths.get(script).toAbsolutePath().toString());
+            for (String option : options)
+                out.writeUTF(option);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            while (true) {
+                byte type = in.readByte();
+                if (type == LoxServer.EXIT) {
+                    System.out.flush();
+                    return in.readInt();
+                }
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                if (type == LoxServer.OUT) {
+                    System.out.write(bytes);
+                    System.out.flush();
+                }
+                else
+                    System.err.write(bytes);
+            }
+        }catch (EOFException e) {
+            System.err.println("jlox server closed the connection.");
+            return UNAVAILABLE;
+        }catch (IOException e) {
+            System.err.println("jlox server connection failed: "+e.getMessage());
+            return UNAVAILABLE;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// JDK Flight Recorder events, so Lox level behavior shows up in the same
+// recording as GC, allocation and CPU samples:
+//   java -XX:StartFlightRecording=filename=rec.jfr -cp out lox.Lox script.txt
+//   jfr print --events lox.Call rec.jfr
+// the first Event constructed initializes JFR (~100 classes, a few hundred
+// ms of startup), so the hooks only make events once recording() is true.
+// after that, a disabled event's begin()/commit() are no-ops.
+// java stack traces are off: they'd show the interpreter, not the script.
+class LoxEvents {
+    // true once a recording has been started in this JVM, at startup or
+    // later through jcmd. only reads a flag, doesn't initialize JFR.
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    @Name("lox.Call")
+    @Label("Lox Function Call")
+    @Category("Lox")
+    @Description("A call to a Lox function, only recorded when slower than the threshold")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static class Call extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Line")
+        @Description("Line the function is declared on")
+        int line;
+
+        @Label("Depth")
+        @Description("Lox call stack depth, 1 for a call from the top level")
+        int depth;
+    }
+
+    @Name("lox.ArrayAllocation")
+    @Label("Lox Array Allocation")
+    @Category("Lox")
+    @Description("Backing storage allocated for a Lox array, on declaration or when its element type is first set")
+    @StackTrace(false)
+    static class ArrayAllocation extends Event {
+        @Label("Array")
+        String name;
+
+        @Label("Element Type")
+        String type;
+
+        @Label("Length")
+        int length;
+
+        // the reference array only, not the boxed elements
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Category("Lox")
+    @StackTrace(false)
+    static class Error extends Event {
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+    }
+
+    static void runtimeError(RuntimeError e) {
+        if (!recording()) return;
+        Error event = new Error();
+        if (!event.isEnabled()) return;
+        event.message = e.getMessage();
+        event.line = e.token.line;
+        event.commit();
+    }
+}
@@ -0,0 +1,170 @@
+package lox;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// handle from open(path, mode): "r" reads lines, "w" truncates, "a" appends.
+// reading maps the file WINDOW bytes at a time and cuts lines straight
+// out of the mapping, so a huge file is read w/ constant heap: the only
+// copy per line is decoding its bytes into the String.
+// writing is buffered; close() (or the end of the run) flushes.
+// synchronized, a handle can be shared by tasks.
+class LoxFile {
+    // a line can't be longer than this
+    static final int WINDOW = 64 << 20;
+    private static final int READ_CHUNK = 1 << 20;
+
+    private final String path;
+    // exactly one of reader/writer is set
+    private FileChannel reader;
+    private BufferedWriter writer;
+
+    private long size;
+    // file offset of window[0]
+    private long windowStart = 0;
+    private MappedByteBuffer window;
+    // reused for decoding, grows to the longest line
+    private byte[] line = new byte[256];
+    private boolean closed = false;
+
+    private LoxFile(String path) {
+        this.path = path;
+    }
+
+    static LoxFile open(String path, String mode) {
+        LoxFile file = new LoxFile(path);
+        try {
+            switch (mode) {
+                case "r" -> {
+                    file.reader = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+                    file.size = file.reader.size();
+                    file.map(0);
+                }
+                case "w" -> file.writer = Files.newBufferedWriter(Path.of(path), StandardCharsets.UTF_8);
+                case "a" -> file.writer = Files.newBufferedWriter(Path.of(path), StandardCharsets.UTF_8,
+                                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                default -> throw new RuntimeError(null, "File mode must be \"r\", \"w\" or \"a\".");
+            }
+        }catch (IOException e) {
+            throw new RuntimeError(null, "Cannot open '"+path+"': "+reason(e)+".");
+        }
+        return file;
+    }
+
+    // next line w/o its "\n" or "\r\n", nil at the end of the file
+    synchronized String readLine() {
+        if (reader == null)
+            throw new RuntimeError(null, closed ? "File is closed." : "File is not open for reading.");
+        int end = nextNewline();
+        if (end < 0) {
+            // the line runs past the window, move the window up to it
+            if (windowStart + window.limit() < size) {
+                map(windowStart + window.position());
+                end = nextNewline();
+            }
+            if (end < 0 && windowStart + window.limit() < size)
+                throw new RuntimeError(null, "Line longer than "+(WINDOW >> 20)+" MB in '"+path+"'.");
+        }
+        int start = window.position();
+        if (end < 0) {
+            // last line, no trailing newline
+            if (start == window.limit()) return null;
+            end = window.limit();
+            window.position(end);
+        }
+        else
+            window.position(end+1);
+        int length = end - start;
+        if (length > 0 && window.get(end-1) == '\r')
+            length--;
+        if (length > line.length)
+            line = new byte[Math.max(length, line.length*2)];
+        window.get(start, line, 0, length);
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    synchronized void write(String text) {
+        if (writer == null)
+            throw new RuntimeError(null, closed ? "File is closed." : "File is not open for writing.");
+        try {
+            writer.write(text);
+        }catch (IOException e) {
+            throw new RuntimeError(null, "Cannot write to '"+path+"': "+reason(e)+".");
+        }
+    }
+
+    // closing twice is fine. the mapping itself goes away w/ the GC,
+    // Java 17 has no way to unmap it.
+    synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            if (reader != null) reader.close();
+            if (writer != null) writer.close();
+        }catch (IOException e) {
+            throw new RuntimeError(null, "Cannot close '"+path+"': "+reason(e)+".");
+        }finally {
+            reader = null;
+            writer = null;
+            window = null;
+        }
+    }
+
+    // read in READ_CHUNK pieces, checking the budget (null for none) in
+    // between, so a huge file can't take the run past its deadline
+    static String readAll(String path, Budget budget) {
+        try (InputStream in = Files.newInputStream(Path.of(path))) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[READ_CHUNK];
+            int n;
+            while ((n = in.read(chunk)) >= 0) {
+                if (budget != null) budget.check(null);
+                bytes.write(chunk, 0, n);
+            }
+            // strict like Files.readString: bad UTF-8 is an error, not U+FFFD
+            return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes.toByteArray())).toString();
+        }catch (IOException e) {
+            throw new RuntimeError(null, "Cannot read '"+path+"': "+reason(e)+".");
+        }
+    }
+
+    // index of the next '\n' in the window, -1 if there's none
+    private int nextNewline() {
+        for (int i=window.position(); i<window.limit(); i++) {
+            if (window.get(i) == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    private static String reason(IOException e) {
+        if (e instanceof NoSuchFileException) return "no such file";
+        if (e instanceof AccessDeniedException) return "permission denied";
+        return e.getMessage();
+    }
+
+    private void map(long start) {
+        try {
+            windowStart = start;
+            window = reader.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+        }catch (IOException e) {
+            throw new RuntimeError(null, "Cannot read '"+path+"': "+reason(e)+".");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<file "+path+">";
+    }
+}
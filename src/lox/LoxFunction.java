@@ -21,18 +21,51 @@ public class LoxFunction implements LoxCallable {
     // be saved to a var identifier then invoked with a "()" call
     @Override
     public Object call(Interpreter interpreter, List<Object> args) {
+        if (interpreter.budget != null) interpreter.budget.tick(declaration.name.line);
         Environment env = new Environment(closure);
         for (int i=0; i<arity(); i++)
             env.define(declaration.params.get(i).lexeme, args.get(i));
+        Profiler profiler = interpreter.profiler;
+        if (profiler != null) profiler.push(declaration.name.lexeme, declaration.name.line);
+        LineCounter lineCounter = interpreter.lineCounter;
+        int callerLine = lineCounter != null ? lineCounter.enter() : 0;
+        LoxEvents.Call event = LoxEvents.recording() ? new LoxEvents.Call() : null;
+        if (event != null) event.begin();
+        interpreter.callDepth++;
+        // async calls made in this call are its own, see LoxScope
+        LoxScope enclosingScope = interpreter.scope;
+        interpreter.scope = null;
+        boolean completed = false;
         try {
             interpreter.executeBlock(declaration.body, env);
+            completed = true;
         }catch (Return returnValue) {
             //System.out.println(returnValue.getClass());
+            completed = true;
             return returnValue.value;
+        }finally {
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.function = declaration.name.lexeme;
+                    event.line = declaration.name.line;
+                    event.depth = interpreter.callDepth;
+                    event.commit();
+                }
+            }
+            interpreter.callDepth--;
+            if (profiler != null) profiler.pop();
+            if (lineCounter != null) lineCounter.leave(callerLine);
+            interpreter.endScope(enclosingScope, completed);
         }
         return null;
     }
 
+    // see Environment.share()
+    void share() {
+        closure.share();
+    }
+
     @Override
     public String toString() {
         return "<fn "+declaration.name.lexeme+">";
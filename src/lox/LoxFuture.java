@@ -0,0 +1,130 @@
+package lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// value of "async f(args)", read w/ "await". the call runs on a task
+// thread w/ a child Interpreter (see LoxTask) and belongs to the LoxScope
+// of whatever started it.
+// errors aren't reported here: they go to the scope, and from there to
+// whoever awaits the call or closes the scope.
+// cancelling goes through the call's Budget, so it's noticed within a
+// Budget check interval, and interrupts it if it's blocked. the parfor
+// chunks and tasks the call started have forks of that Budget, so they
+// stop too.
+class LoxFuture {
+    private final LoxScope scope;
+    private final LoxCallable fn;
+    // where the async call is, for errors w/o a token of their own
+    private final Token call;
+    private final Interpreter interpreter;
+    // set while running, for cancel() to interrupt
+    private Thread thread = null;
+    private Object result;
+    private RuntimeError error;
+    private boolean done = false, cancelled = false;
+
+    LoxFuture(LoxScope scope, Interpreter parent, LoxCallable fn, Token call) {
+        this.scope = scope;
+        this.fn = fn;
+        this.call = call;
+        this.interpreter = parent.child();
+        if (interpreter.budget == null)
+            interpreter.budget = new Budget(0, 0, 0);
+    }
+
+    void start(List<Object> args) {
+        LoxTask.pool.execute(() -> run(args));
+    }
+
+    private void run(List<Object> args) {
+        synchronized (this) {
+            if (cancelled) {
+                done = true;
+                notifyAll();
+                return;
+            }
+            thread = Thread.currentThread();
+        }
+        Object value = null;
+        RuntimeError failure = null;
+        try {
+            value = fn.call(interpreter, args);
+        }catch (RuntimeError e) {
+            failure = e.token != null ? e : new RuntimeError(call, e.getMessage());
+        }catch (Cancelled e) {
+        }catch (RuntimeException | StackOverflowError e) {
+            failure = new RuntimeError(call, "Async call failed: "+e);
+        }
+        boolean report;
+        synchronized (this) {
+            report = failure != null && !cancelled;
+        }
+        // before done, so a scope closing on this call sees the failure
+        if (report)
+            scope.failed(failure);
+        synchronized (this) {
+            thread = null;
+            // a late cancel() must not interrupt the pool's next task
+            Thread.interrupted();
+            result = value;
+            error = failure;
+            done = true;
+            notifyAll();
+        }
+    }
+
+    synchronized void cancel() {
+        if (done || cancelled) return;
+        cancelled = true;
+        interpreter.budget.cancel();
+        if (thread != null)
+            thread.interrupt();
+    }
+
+    // the call's value or error. a call cancelled b/c a sibling failed
+    // throws the sibling's error.
+    // the scope is asked outside the lock, it locks the other way around.
+    // the awaiter's budget (null for none) can time the wait out.
+    Object await(Budget budget) {
+        synchronized (this) {
+            while (!done) {
+                try {
+                    if (budget == null)
+                        wait();
+                    else
+                        TimeUnit.NANOSECONDS.timedWait(this, budget.waitNanos());
+                }catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeError(null, "Interrupted while awaiting.");
+                }
+            }
+        }
+        if (cancelled) {
+            RuntimeError failure = scope.failure();
+            throw failure != null ? failure : new RuntimeError(null, "Awaited call was cancelled.");
+        }
+        if (error != null)
+            throw error;
+        return result;
+    }
+
+    // for the scope: waits even if interrupted, the call ends soon once cancelled
+    synchronized void waitDone() {
+        boolean interrupted = false;
+        while (!done) {
+            try {
+                wait();
+            }catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return "<future "+fn+">";
+    }
+}
@@ -0,0 +1,176 @@
+package lox;
+
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+// one Lox execution context: its own Interpreter (globals, locals, env),
+// ErrorReporter and output streams. nothing here is static, so any number
+// of runtimes can run side by side on different threads, e.g. a warm JVM
+// hosting many short scripts. a single runtime is not thread safe.
+// Lox (the CLI) is a thin shell over one of these.
+public class LoxRuntime {
+    private final ErrorReporter errors;
+    private final Interpreter interpreter;
+    // parse function bodies on their first call (see LazyBody)
+    boolean lazy = false;
+    // reuse the resolved AST of an unchanged script (runCached)
+    AstCache cache = null;
+    // per-phase costs, null if not collected
+    Instrumentation stats = null;
+
+    public LoxRuntime() {
+        this(System.out, System.err);
+    }
+
+    // print and static errors go to out, runtime errors to err
+    public LoxRuntime(PrintStream out, PrintStream err) {
+        this.errors = new ErrorReporter(out, err);
+        this.interpreter = new Interpreter(errors, out);
+    }
+
+    Interpreter interpreter() {
+        return interpreter;
+    }
+
+    // limits for everything run from here on, null for none (see Budget)
+    public void setBudget(Budget budget) {
+        interpreter.budget = budget;
+    }
+
+    public boolean hadError() {
+        return errors.hadError;
+    }
+
+    public boolean hadRuntimeError() {
+        return errors.hadRuntimeError;
+    }
+
+    // the CLI's exit code for what's happened so far: 65 for a static
+    // error, 70 for a runtime error, 0 otherwise
+    public int exitCode() {
+        if (errors.hadError) return 65;
+        if (errors.hadRuntimeError) return 70;
+        return 0;
+    }
+
+    // runs source against this runtime's globals, returns exitCode()
+    public int run(String source) {
+        List<Stmt> stmts = compile(source, lazy);
+        if (stmts != null)
+            execute(stmts);
+        return exitCode();
+    }
+
+    // same as run() but skips straight to interpreting on a cache hit.
+    // always parses eagerly on a miss since the cache needs every body.
+    // scripts with errors are never cached.
+    int runCached(byte[] bytes) {
+        long start = begin();
+        List<Stmt> stmts = cache.load(bytes, interpreter);
+        end(Instrumentation.Phase.CACHE, start);
+        if (stmts == null) {
+            stmts = compile(new String(bytes, Charset.defaultCharset()), false);
+            if (stmts == null) return exitCode();
+            cache.store(bytes, stmts, interpreter);
+        }
+        execute(stmts);
+        return exitCode();
+    }
+
+    // scans straight off the reader and runs each top-level statement as
+    // soon as it's parsed, so memory stays bounded by the largest statement
+    // instead of the whole source + token list.
+    // unlike run, statements before a syntax error will already have run.
+    int runStream(Reader reader) {
+        Parser parser = new Parser(new Scanner(reader, errors));
+        Resolver resolver = new Resolver(interpreter);
+        // no tokens tracing here, and scanning is counted as part of
+        // parsing since the two are interleaved token by token
+        while (true) {
+            long start = begin();
+            Stmt stmt = parser.parseNext();
+            end(Instrumentation.Phase.PARSE, start);
+            if (errors.hadError || stmt == null) break;
+            List<Stmt> stmts = List.of(stmt);
+            if (Trace.AST) Trace.ast(stmts);
+            start = begin();
+            resolver.resolve(stmts);
+            end(Instrumentation.Phase.RESOLVE, start);
+            if (errors.hadError) break;
+            execute(stmts);
+            if (errors.hadRuntimeError) break;
+        }
+        return exitCode();
+    }
+
+    // one REPL line. a syntax error doesn't end the session.
+    // calculator fast path: a bare arithmetic expression (no ';')
+    // is evaluated by the RPN engine and printed
+    void runLine(String line, PrintStream out) {
+        // lines w/ scan errors take the normal path so the error is reported.
+        // so does anything Formula can't compile, the fast path must never
+        // reject what run() accepts.
+        ErrorReporter silent = ErrorReporter.silent();
+        List<Token> tokens = new Scanner(line, silent).scanTokens();
+        Formula formula = null;
+        if (!silent.hadError && Formula.isArithmetic(tokens)) {
+            try {
+                formula = Formula.compile(line);
+            }catch (RuntimeError e) {
+                // not a formula after all
+            }
+        }
+        if (formula != null)
+            out.println(interpreter.stringify(formula.evaluate()));
+        else
+            run(line);
+        errors.hadError = false;
+    }
+
+    // scan, parse and resolve. null if any phase reported an error.
+    // every Trace check is a static final, so this is free when tracing is off.
+    private List<Stmt> compile(String source, boolean lazy) {
+        long start = begin();
+        TokenBuffer tokens = new Scanner(source, errors).scanBuffer();
+        end(Instrumentation.Phase.SCAN, start);
+        if (Trace.TOKENS) Trace.tokens(tokens);
+
+        start = begin();
+        Parser parser = new Parser(tokens, 0, lazy, errors);
+        List<Stmt> stmts = parser.parse();
+        end(Instrumentation.Phase.PARSE, start);
+        if (errors.hadError) return null;
+        if (Trace.AST) Trace.ast(stmts);
+
+        start = begin();
+        Resolver resolver = new Resolver(interpreter);
+        resolver.resolve(stmts);
+        end(Instrumentation.Phase.RESOLVE, start);
+        if (errors.hadError) return null;
+        return stmts;
+    }
+
+    private void execute(List<Stmt> stmts) {
+        long start = begin();
+        Profiler profiler = interpreter.profiler;
+        if (profiler != null) profiler.resume();
+        interpreter.interpret(stmts);
+        if (profiler != null) profiler.pause();
+        interpreter.finish();
+        end(Instrumentation.Phase.EXECUTE, start);
+    }
+
+    // phase bracketing shared by --trace=time and --stats.
+    // returns the start time for Trace, 0 if it's off.
+    private long begin() {
+        if (stats != null) stats.start();
+        return Trace.TIME ? System.nanoTime() : 0;
+    }
+
+    private void end(Instrumentation.Phase phase, long start) {
+        if (Trace.TIME) Trace.time(phase.label, start);
+        if (stats != null) stats.stop(phase);
+    }
+}
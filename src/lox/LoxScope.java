@@ -0,0 +1,58 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// the async calls started directly by one function call (or by the
+// top level of a run, or a parfor chunk). the call doesn't end until
+// they're all done:
+//   returning normally waits for them, and if any failed the call fails
+//   w/ the first error instead of returning;
+//   leaving w/ an error cancels them, then waits.
+// the first failure also cancels the rest right away, and await on a
+// cancelled call throws that first error.
+// Java 17 has no StructuredTaskScope, this is the same idea by hand.
+class LoxScope {
+    private final List<LoxFuture> children = new ArrayList<>();
+    private RuntimeError failure = null;
+
+    synchronized LoxFuture fork(Interpreter parent, LoxCallable fn, List<Object> args, Token call) {
+        LoxFuture future = new LoxFuture(this, parent, fn, call);
+        Environment.share(fn);
+        for (Object arg : args)
+            Environment.share(arg);
+        children.add(future);
+        // a sibling already failed, don't bother running it
+        if (failure != null)
+            future.cancel();
+        future.start(args);
+        return future;
+    }
+
+    synchronized void failed(RuntimeError e) {
+        if (failure != null) return;
+        failure = e;
+        for (LoxFuture child : children)
+            child.cancel();
+    }
+
+    synchronized RuntimeError failure() {
+        return failure;
+    }
+
+    void close(boolean completed) {
+        List<LoxFuture> all;
+        synchronized (this) {
+            if (!completed) {
+                for (LoxFuture child : children)
+                    child.cancel();
+            }
+            all = List.copyOf(children);
+        }
+        for (LoxFuture child : all)
+            child.waitDone();
+        RuntimeError e = failure();
+        if (completed && e != null)
+            throw e;
+    }
+}
@@ -0,0 +1,158 @@
+package lox;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// jlox --server=<socket>: keeps one warm JVM around and runs scripts sent
+// by jlox --client=<socket> (see LoxClient), so repeated runs skip JVM
+// startup and start on already compiled interpreter code.
+// every request gets its own LoxRuntime and runs on its own thread.
+// protocol, all through Data{Input,Output}Stream:
+//   request:  int n, then n UTF strings: script path, then options
+//   response: frames of byte type + payload until an EXIT frame
+//             OUT/ERR: int length, bytes   EXIT: int exit code
+class LoxServer {
+    static final byte OUT = 1, ERR = 2, EXIT = 3;
+
+    static void serve(String socket) throws IOException {
+        Path path = Paths.get(socket);
+        // a socket file left behind by a server that was killed
+        Files.deleteIfExists(path);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.deleteIfExists(path);
+            }catch (IOException e) {
+                // nothing left to do
+            }
+        }));
+        System.err.println("jlox server listening on "+path+".");
+
+        ExecutorService workers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "jlox-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+        while (true) {
+            SocketChannel client = server.accept();
+            workers.execute(() -> handle(client));
+        }
+    }
+
+    private static void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(client));
+            int n = in.readInt();
+            String[] request = new String[n];
+            for (int i=0; i<n; i++)
+                request[i] = in.readUTF();
+
+            PrintStream stdout = new PrintStream(new FrameStream(out, OUT), true);
+            PrintStream stderr = new PrintStream(new FrameStream(out, ERR), true);
+            int code = run(request, stdout, stderr);
+            stdout.flush();
+            stderr.flush();
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(code);
+                out.flush();
+            }
+        }catch (IOException e) {
+            // client went away, nothing to report to
+        }
+    }
+
+    // same exit codes as the CLI, plus 64 for a bad request and 66 for a
+    // script that can't be read
+    private static int run(String[] request, PrintStream out, PrintStream err) {
+        if (request.length == 0) {
+            err.println("No script given.");
+            return 64;
+        }
+        LoxRuntime runtime = new LoxRuntime(out, err);
+        boolean stream = false;
+        long fuel = 0, timeout = 0, maxArrayBytes = 0;
+        try {
+            for (int i=1; i<request.length; i++) {
+                String option = request[i];
+                if (option.equals("--lazy"))
+                    runtime.lazy = true;
+                else if (option.equals("--stream"))
+                    stream = true;
+                else if (option.startsWith("--fuel="))
+                    fuel = Long.parseLong(option.substring("--fuel=".length()));
+                else if (option.startsWith("--timeout="))
+                    timeout = Long.parseLong(option.substring("--timeout=".length()));
+                else if (option.startsWith("--max-array-bytes="))
+                    maxArrayBytes = Long.parseLong(option.substring("--max-array-bytes=".length()));
+                else {
+                    err.println("Option '"+option+"' isn't supported in server mode.");
+                    return 64;
+                }
+            }
+        }catch (NumberFormatException e) {
+            err.println("Expect a number in a limit option.");
+            return 64;
+        }
+        // the deadline starts now, not when the server started
+        if (fuel > 0 || timeout > 0 || maxArrayBytes > 0)
+            runtime.setBudget(new Budget(fuel, timeout, maxArrayBytes));
+        Path script = Paths.get(request[0]);
+        try {
+            if (stream) {
+                try (Reader reader = Files.newBufferedReader(script, Charset.defaultCharset())) {
+                    return runtime.runStream(reader);
+                }
+            }
+            return runtime.run(Files.readString(script, Charset.defaultCharset()));
+        }catch (IOException e) {
+            err.println("Cannot read script '"+script+"'.");
+            return 66;
+        }
+    }
+
+    // one frame per write; PrintStream w/ autoflush writes once per line.
+    // stdout and stderr share the socket, hence the lock on it.
+    private static class FrameStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+                out.flush();
+            }
+        }
+    }
+}
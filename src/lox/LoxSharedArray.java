@@ -0,0 +1,132 @@
+package lox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// numeric array that's safe to share between tasks and parfor chunks.
+// made by sharedArray(n) (doubles, all 0) or counters(n) (striped counters,
+// for histograms and the like). read w/ a[i] like any array.
+// on a shared array, a[i] = v is a volatile write and a[i] += v, a[i]++
+// etc. are atomic, as are the atomicAdd/compareAndSet/getAndSet natives.
+// counters can only be added to: each slot is a LongAdder, so adds from
+// many threads don't fight over one cache line, and a read sums the stripes.
+// so an add to a counter is nil (c[i]++ doesn't sum the stripes back up),
+// the total is read w/ c[i].
+// errors are thrown at the given token, which is null from natives.
+class LoxSharedArray implements LoxCallable {
+    private static final VarHandle DOUBLES = MethodHandles.arrayElementVarHandle(double[].class);
+
+    private final int length;
+    // exactly one of these is set
+    private final double[] values;
+    private final LongAdder[] counters;
+
+    private LoxSharedArray(int length, double[] values, LongAdder[] counters) {
+        this.length = length;
+        this.values = values;
+        this.counters = counters;
+    }
+
+    static LoxSharedArray doubles(int length) {
+        return new LoxSharedArray(length, new double[length], null);
+    }
+
+    static LoxSharedArray counters(int length) {
+        LongAdder[] counters = new LongAdder[length];
+        for (int i=0; i<length; i++)
+            counters[i] = new LongAdder();
+        return new LoxSharedArray(length, null, counters);
+    }
+
+    // backing array plus, for counters, a LongAdder per slot (before any
+    // contention makes it grow stripes)
+    static long bytes(int length, boolean counters) {
+        return counters ? 16 + 36L*length : 16 + 8L*length;
+    }
+
+    @Override
+    public int arity() {
+        return 1;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> index) {
+        int ind = checkIndex(null, index.get(0));
+        if (counters != null)
+            return (double)counters[ind].sum();
+        return (double)DOUBLES.getVolatile(values, ind);
+    }
+
+    void assign(Token where, Object index, Object value) {
+        int ind = checkIndex(where, index);
+        double val = number(where, value);
+        if (counters != null)
+            throw new RuntimeError(where, "Counters can only be added to.");
+        DOUBLES.setVolatile(values, ind, val);
+    }
+
+    // returns the new value, nil for counters
+    Object add(Token where, Object index, Object delta) {
+        int ind = checkIndex(where, index);
+        double d = number(where, delta);
+        if (counters != null) {
+            if (d != Math.floor(d) || Math.abs(d) > Long.MAX_VALUE)
+                throw new RuntimeError(where, "Counters only add integers.");
+            counters[ind].add((long)d);
+            return null;
+        }
+        double prev;
+        do {
+            prev = (double)DOUBLES.getVolatile(values, ind);
+        } while (!DOUBLES.weakCompareAndSet(values, ind, prev, prev+d));
+        return prev+d;
+    }
+
+    // compares bit patterns, so NaN matches NaN and 0 doesn't match -0
+    boolean compareAndSet(Token where, Object index, Object expected, Object value) {
+        int ind = checkIndex(where, index);
+        double exp = number(where, expected), val = number(where, value);
+        if (counters != null)
+            throw new RuntimeError(where, "Counters can only be added to.");
+        return DOUBLES.compareAndSet(values, ind, exp, val);
+    }
+
+    // returns the old value
+    double getAndSet(Token where, Object index, Object value) {
+        int ind = checkIndex(where, index);
+        double val = number(where, value);
+        if (counters != null)
+            throw new RuntimeError(where, "Counters can only be added to.");
+        return (double)DOUBLES.getAndSet(values, ind, val);
+    }
+
+    Object get(Token property) {
+        if (property.lexeme.equals("len"))
+            return (double)length;
+        throw new RuntimeError(property, "No property named "+property.lexeme+".");
+    }
+
+    private double number(Token where, Object value) {
+        if (!(value instanceof Double d))
+            throw new RuntimeError(where, "Shared arrays only hold numbers.");
+        return d;
+    }
+
+    private int checkIndex(Token where, Object index) {
+        if (!(index instanceof Double))
+            throw new RuntimeError(where, "Index must be an integer.");
+        int ind = ((Double)index).intValue();
+        if (ind < 0)
+            throw new RuntimeError(where, "Index must be non-negative.");
+        if (ind >= length)
+            throw new RuntimeError(where, "Index out of bounds: array has length "+length+".");
+        return ind;
+    }
+
+    @Override
+    public String toString() {
+        return counters != null ? "<counters "+length+">" : "<shared array "+length+">";
+    }
+}
@@ -0,0 +1,99 @@
+package lox;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// handle returned by spawn(fn, args...): fn runs on its own thread w/ a
+// child Interpreter (shared globals, own env and call stack).
+// a runtime error in the task is reported like any other, and join()ing
+// a failed task is an error in the joiner too.
+// Java 17 has no virtual threads, so tasks run on a cached pool of daemon
+// platform threads; a task blocked in recv() holds its thread.
+class LoxTask {
+    // also runs async calls (see LoxFuture)
+    static final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "lox-task");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LoxCallable fn;
+    // the spawn() call, for errors w/o a token of their own (natives)
+    private final Token call;
+    private Object result;
+    private boolean done = false, failed = false;
+
+    private LoxTask(LoxCallable fn, Token call) {
+        this.fn = fn;
+        this.call = call;
+    }
+
+    static LoxTask spawn(Interpreter parent, LoxCallable fn, List<Object> args, Token call) {
+        LoxTask task = new LoxTask(fn, call);
+        Interpreter child = parent.child();
+        Environment.share(fn);
+        for (Object arg : args)
+            Environment.share(arg);
+        parent.tasks.add(task);
+        pool.execute(() -> task.run(child, args));
+        return task;
+    }
+
+    // done is set in the finally, so whatever the task throws, joiners
+    // and Interpreter.finish() don't hang
+    private void run(Interpreter interpreter, List<Object> args) {
+        Object value = null;
+        boolean error = true;
+        try {
+            value = fn.call(interpreter, args);
+            error = false;
+        }catch (RuntimeError e) {
+            interpreter.errors.runtimeError(e.token != null ? e : new RuntimeError(call, e.getMessage()));
+        }catch (Cancelled e) {
+            // started by an async call that was cancelled, see Budget.
+            // joining it fails, nothing to report
+        }catch (RuntimeException | StackOverflowError e) {
+            // e.g. a Break/Return escaping
+            interpreter.errors.runtimeError(new RuntimeError(call, "Task failed: "+e));
+        }finally {
+            synchronized (this) {
+                result = value;
+                failed = error;
+                done = true;
+                notifyAll();
+            }
+        }
+    }
+
+    // blocks until the task ends, returns what fn returned.
+    // the joiner's budget (null for none) can time the wait out
+    synchronized Object join(Budget budget) {
+        while (!done) {
+            try {
+                if (budget == null)
+                    wait();
+                else
+                    TimeUnit.NANOSECONDS.timedWait(this, budget.waitNanos());
+            }catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeError(null, "Interrupted while joining a task.");
+            }
+        }
+        if (failed)
+            throw new RuntimeError(null, "Joined task failed.");
+        return result;
+    }
+
+    // waits w/o the joiner's error, for the runtime to drain its tasks
+    synchronized void await() throws InterruptedException {
+        while (!done)
+            wait();
+    }
+
+    @Override
+    public String toString() {
+        return "<task "+fn+">";
+    }
+}
@@ -0,0 +1,281 @@
+package lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+// native fns, defined in the globals of every Interpreter.
+// natives have no call site token, so they throw RuntimeError w/ a null
+// token and visitCallExpr fills in the call's.
+class Natives {
+    // nanoClock's origin. nanoTime's own origin is arbitrary and can be far
+    // enough out that a double can't hold it to the nanosecond (past 2^53 ns,
+    // ~104 days), so readings are taken relative to class load instead
+    private static final long NANO_ORIGIN = System.nanoTime();
+
+    static void define(Environment globals) {
+        // seconds, millisecond resolution
+        globals.define("clock", new Native("clock", 0) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return (double)System.currentTimeMillis() / 1000.;
+            }
+        });
+
+        // nanoseconds since startup, only useful for differences.
+        // exact for the first ~104 days of the process
+        globals.define("nanoClock", new Native("nanoClock", 0) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return (double)(System.nanoTime() - NANO_ORIGIN);
+            }
+        });
+
+        // spawn(fn, args...): runs fn(args...) on another thread, returns a task
+        globals.define("spawn", new Native("spawn", -1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                if (args.isEmpty() || !(args.get(0) instanceof LoxCallable fn))
+                    throw new RuntimeError(null, "spawn() expects a function.");
+                List<Object> fnArgs = List.copyOf(args.subList(1, args.size()));
+                if (fn.arity() >= 0 && fnArgs.size() != fn.arity())
+                    throw new RuntimeError(null, "Expected "+fn.arity()+" arguments but got "+fnArgs.size()+".");
+                return LoxTask.spawn(interpreter, fn, fnArgs, interpreter.callSite);
+            }
+        });
+
+        // join(task): waits for the task, returns what its fn returned
+        globals.define("join", new Native("join", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                if (!(args.get(0) instanceof LoxTask task))
+                    throw new RuntimeError(null, "join() expects a task.");
+                return task.join(interpreter.budget);
+            }
+        });
+
+        // channel(capacity): bounded channel for send/recv/close
+        globals.define("channel", new Native("channel", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return new LoxChannel(positiveInt(args.get(0), "channel() capacity"));
+            }
+        });
+
+        globals.define("send", new Native("send", 2) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                LoxChannel channel = channel(args.get(0), "send");
+                // the receiver may call it
+                Environment.share(args.get(1));
+                channel.send(args.get(1), interpreter.budget);
+                return null;
+            }
+        });
+
+        globals.define("recv", new Native("recv", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return channel(args.get(0), "recv").recv(interpreter.budget);
+            }
+        });
+
+        // close(channel) or close(file)
+        globals.define("close", new Native("close", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                if (args.get(0) instanceof LoxFile file) {
+                    interpreter.files.remove(file);
+                    file.close();
+                }
+                else
+                    channel(args.get(0), "close").close();
+                return null;
+            }
+        });
+
+        // open(path, mode): mode "r", "w" or "a". files still open when
+        // the run ends are closed then.
+        globals.define("open", new Native("open", 2) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                LoxFile file = LoxFile.open(string(args.get(0), "open() path"), string(args.get(1), "open() mode"));
+                interpreter.files.add(file);
+                return file;
+            }
+        });
+
+        // readLine(file): next line, nil at the end
+        globals.define("readLine", new Native("readLine", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return file(args.get(0), "readLine").readLine();
+            }
+        });
+
+        // readFile(path): the whole file as one string
+        globals.define("readFile", new Native("readFile", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return LoxFile.readAll(string(args.get(0), "readFile() path"), interpreter.budget);
+            }
+        });
+
+        // write(file, value) and writeLine(file, value): value as print shows it
+        globals.define("write", new Native("write", 2) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                file(args.get(0), "write").write(interpreter.stringify(args.get(1)));
+                return null;
+            }
+        });
+
+        globals.define("writeLine", new Native("writeLine", 2) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                file(args.get(0), "writeLine").write(interpreter.stringify(args.get(1))+"\n");
+                return null;
+            }
+        });
+
+        // sharedArray(length): numbers, all 0, safe to update from any task
+        globals.define("sharedArray", new Native("sharedArray", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                int length = positiveInt(args.get(0), "sharedArray() length");
+                if (interpreter.budget != null)
+                    interpreter.budget.allocate("sharedArray", LoxSharedArray.bytes(length, false));
+                return LoxSharedArray.doubles(length);
+            }
+        });
+
+        // counters(length): striped counters, all 0, that can only be added to
+        globals.define("counters", new Native("counters", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                int length = positiveInt(args.get(0), "counters() length");
+                if (interpreter.budget != null)
+                    interpreter.budget.allocate("counters", LoxSharedArray.bytes(length, true));
+                return LoxSharedArray.counters(length);
+            }
+        });
+
+        // atomicAdd(a, i, delta): returns the new a[i], nil on counters
+        globals.define("atomicAdd", new Native("atomicAdd", 3) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return shared(args.get(0), "atomicAdd").add(null, args.get(1), args.get(2));
+            }
+        });
+
+        // compareAndSet(a, i, expected, value): true if a[i] was expected
+        globals.define("compareAndSet", new Native("compareAndSet", 4) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return shared(args.get(0), "compareAndSet").compareAndSet(null, args.get(1), args.get(2), args.get(3));
+            }
+        });
+
+        // getAndSet(a, i, value): returns the old a[i]
+        globals.define("getAndSet", new Native("getAndSet", 3) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return shared(args.get(0), "getAndSet").getAndSet(null, args.get(1), args.get(2));
+            }
+        });
+
+        // bench(fn, iterations): warms up, then times each of iterations calls
+        // to fn(). returns an array {mean, min, p50, p99} in nanoseconds.
+        globals.define("bench", new Native("bench", 2) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                if (!(args.get(0) instanceof LoxCallable fn) || fn.arity() != 0)
+                    throw new RuntimeError(null, "bench() expects a function taking no arguments.");
+                int iterations = positiveInt(args.get(1), "bench() iterations");
+                return bench(interpreter, fn, iterations);
+            }
+        });
+    }
+
+    // each call is a step of the budget, like a loop iteration: a native
+    // fn doesn't tick on its own
+    private static LoxArray bench(Interpreter interpreter, LoxCallable fn, int iterations) {
+        List<Object> none = List.of();
+        Budget budget = interpreter.budget;
+        int line = interpreter.callSite.line;
+        // let the JIT see the body before anything is timed
+        for (int i=0; i<Math.max(1, iterations/10); i++) {
+            if (budget != null) budget.tick(line);
+            fn.call(interpreter, none);
+        }
+
+        long[] times = new long[iterations];
+        long total = 0;
+        for (int i=0; i<iterations; i++) {
+            if (budget != null) budget.tick(line);
+            long start = System.nanoTime();
+            fn.call(interpreter, none);
+            times[i] = System.nanoTime() - start;
+            total += times[i];
+        }
+        Arrays.sort(times);
+        List<Object> stats = List.of((double)total/iterations, (double)times[0],
+                                    (double)percentile(times, 50), (double)percentile(times, 99));
+        return new LoxArray(new Token(TokenType.IDENTIFIER, "bench", null, 0), stats.size(), stats);
+    }
+
+    // nearest rank on sorted times, also used by the benchmarks in bench/
+    static long percentile(long[] sorted, int pct) {
+        int rank = (int)Math.ceil(pct/100.*sorted.length);
+        return sorted[Math.max(0, rank-1)];
+    }
+
+    private static LoxChannel channel(Object value, String fn) {
+        if (!(value instanceof LoxChannel channel))
+            throw new RuntimeError(null, fn+"() expects a channel.");
+        return channel;
+    }
+
+    private static LoxFile file(Object value, String fn) {
+        if (!(value instanceof LoxFile file))
+            throw new RuntimeError(null, fn+"() expects a file.");
+        return file;
+    }
+
+    private static String string(Object value, String what) {
+        if (!(value instanceof String s))
+            throw new RuntimeError(null, what+" must be a string.");
+        return s;
+    }
+
+    private static LoxSharedArray shared(Object value, String fn) {
+        if (!(value instanceof LoxSharedArray array))
+            throw new RuntimeError(null, fn+"() expects a shared array.");
+        return array;
+    }
+
+    private static int positiveInt(Object value, String what) {
+        if (!(value instanceof Double d) || d != Math.floor(d) || d < 1 || d > Integer.MAX_VALUE)
+            throw new RuntimeError(null, what+" must be a positive integer.");
+        return d.intValue();
+    }
+
+    private abstract static class Native implements LoxCallable {
+        private final String name;
+        private final int arity;
+
+        Native(String name, int arity) {
+            this.name = name;
+            this.arity = arity;
+        }
+
+        @Override
+        public int arity() {
+            return arity;
+        }
+
+        @Override
+        public String toString() {
+            return "<native fn "+name+">";
+        }
+    }
+}
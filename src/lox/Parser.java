@@ -15,17 +15,18 @@ import static lox.TokenType.*;
 // varDecl -> "var" IDENTIFIER ("=" expression)? ";"
 // arrDecl -> "arr" IDENTIFIER "[" expression "]" ("=" "{" arguments? "}" )? ";"
 // arguments -> expression ("," expression)*
-// statement -> exprStmt | ifStmt | printStmt | returnStmt | whileStmt | forStmt | block
+// statement -> exprStmt | ifStmt | printStmt | returnStmt | whileStmt | forStmt | parforStmt | block
 // ifStmt -> "if" expression "then" ("else" statement)?
 // printStmt -> "print" expression ";"
 // returnStmt -> "return" expression? ";"
 // breakStmt -> "break" ";"
 // whileStmt -> "while" "(" expression ")" statement
 // forStmt-> "for" "(" (varDecl | exprStmt)? ";" expression? ";" expression? ")" statement
+// parforStmt -> "parfor" "(" "var" IDENTIFIER "=" expression ";" IDENTIFIER "<" expression ";" IDENTIFIER "++" ")" statement
 // block -> "{" statement* "}"
 // exprStmt -> expression ";"
 // expression -> assignment
-// assignment -> IDENTIFIER ("=" assignment | ("+=" | "-=" ) logic_or) | logic_or
+// assignment -> IDENTIFIER ("=" assignment | ("+=" | "-=" ) logic_or | "++" | "--") | logic_or
 // logic_or -> logic_and ("or" logic_and)*
 // logic_and -> equality ("and" equality)*
 // equality -> comparison (( '==' | '!=' ) comparison)*
@@ -33,18 +34,47 @@ import static lox.TokenType.*;
 // term -> factor (( '+' | '-' ) factor)*
 // factor -> exponent (( '*' | '/' | '%' ) exponent)*
 // exponent -> unary (( '*' | '/' | '%' ) unary)*
-// unary -> (( '!' | '-' ) unary) | primary
+// unary -> (( '!' | '-' | "await" ) unary) | "async" call | call
 // call -> array ("(" arguments? ")" | "." IDENTIFIER)*
 // arrayCall -> primary "[" expression "]"
 // primary -> IDENTIFIER | '(' expr ')' | NUMBER | STRING | 'true' | 'false' | 'nil'
 public class Parser {
     private static class ParseError extends RuntimeException { }
 
-    private final List<Token> tokens;
+    // exactly one of tokens/scanner is set.
+    // with a TokenBuffer, tokens are plain indices and a Token object is only
+    // built by peek()/prev() when the AST or an error message needs one.
+    // with a scanner, tokens are pulled on demand and only the
+    // current and previous ones are kept alive.
+    private final TokenBuffer tokens;
+    private final Scanner scanner;
+    // pre-parse mode: function bodies are only brace-matched (see LazyBody).
+    // needs a TokenBuffer to come back to the body later.
+    private final boolean lazy;
+    private final ErrorReporter errors;
     private int cur = 0;
+    private Token previous, current;
+    // index of the buffered token cached in previous
+    private int previousIndex = -1;
 
-    Parser(List<Token> tokens) {
+    Parser(TokenBuffer tokens, ErrorReporter errors) {
+        this(tokens, 0, false, errors);
+    }
+
+    Parser(TokenBuffer tokens, int start, boolean lazy, ErrorReporter errors) {
         this.tokens = tokens;
+        this.scanner = null;
+        this.lazy = lazy;
+        this.errors = errors;
+        this.cur = start;
+    }
+
+    Parser(Scanner scanner) {
+        this.tokens = null;
+        this.scanner = scanner;
+        this.lazy = false;
+        this.errors = scanner.errors;
+        this.current = scanner.nextToken();
     }
 
     List<Stmt> parse() {
@@ -54,11 +84,20 @@ public class Parser {
         return statements;
     }
 
+    // streaming counterpart to parse(): one top-level declaration at a time
+    // so it can be run before the rest of the source is even scanned.
+    // returns null at EOF (and also on a parse error, which sets hadError).
+    Stmt parseNext() {
+        if (atEnd()) return null;
+        return declaration();
+    }
+
     private Stmt declaration() {
+        int line = peekLine();
         try {
-            if (match(VAR)) return varDeclaration();
-            else if (match(ARR)) return arrDeclaration();
-            else if (match(FN)) return function("function");
+            if (match(VAR)) return at(line, varDeclaration());
+            else if (match(ARR)) return at(line, arrDeclaration());
+            else if (match(FN)) return at(line, function("function"));
             return statement();
         }catch (ParseError error) {
             sync();
@@ -83,10 +122,30 @@ public class Parser {
         }
         consume(R_PAREN, "Expect ')' after parameters.");
         consume(L_BRACE, "Expect '{' before "+kind+" body.");
-        List<Stmt> body = block();
+        List<Stmt> body = lazy ? skipBlock() : block();
         return new Stmt.Function(name, params, body);
     }
 
+    // pre-parse: just find the matching '}' and remember where the body is.
+    // parse errors inside only show up once LazyBody parses it for real.
+    private List<Stmt> skipBlock() {
+        int start = cur;
+        int depth = 1;
+        while (!atEnd()) {
+            if (check(L_BRACE)) depth++;
+            else if (check(R_BRACE) && --depth == 0) break;
+            advance();
+        }
+        LazyBody body = new LazyBody(tokens, start, cur);
+        consume(R_BRACE, "Expect '}' after block.");
+        return body;
+    }
+
+    // entry point for LazyBody: parser was started right after the '{'
+    List<Stmt> functionBody() {
+        return block();
+    }
+
     private Stmt arrDeclaration() {
         Token name = consume(IDENTIFIER, "Expect array name.");
         consume(L_BRACKET, "Expect '[' after array name.");
@@ -126,15 +185,25 @@ public class Parser {
     }
 
     private Stmt statement() {
+        int line = peekLine();
         // does order matter?
-        if (match(IF)) return ifStmt();
-        else if (match(PRINT)) return printStmt();
-        else if (match(RETURN)) return returnStmt();
-        else if (match(BREAK)) return breakStmt();
-        else if (match(WHILE)) return whileStmt();
-        else if (match(FOR)) return forStmt();
-        else if (match(L_BRACE)) return new Stmt.Block(block());
-        return exprStmt();
+        if (match(IF)) return at(line, ifStmt());
+        else if (match(PRINT)) return at(line, printStmt());
+        else if (match(RETURN)) return at(line, returnStmt());
+        else if (match(BREAK)) return at(line, breakStmt());
+        else if (match(WHILE)) return at(line, whileStmt());
+        else if (match(FOR)) return at(line, forStmt());
+        else if (match(PARFOR)) return at(line, parforStmt());
+        else if (match(L_BRACE)) return at(line, new Stmt.Block(block()));
+        return at(line, exprStmt());
+    }
+
+    // tags a statement w/ the line it starts on, for per-line counts.
+    // keeps the line of an inner statement that was already tagged.
+    private Stmt at(int line, Stmt stmt) {
+        if (stmt.line == 0)
+            stmt.line = line;
+        return stmt;
     }
 
     // if stmts need a delimiter to discern the condition from the following stmt.
@@ -187,6 +256,7 @@ public class Parser {
     }
 
     private Stmt forStmt() {
+        int line = prev().line;
         consume(L_PAREN, "Expect '(' after 'for'.");
 
         // no direct semicolon consume cuz expecting statements
@@ -203,19 +273,49 @@ public class Parser {
         if (!check(SEMICOLON)) incr = expression();
         consume(R_PAREN, "Expect ')' after for increment.");
 
+        // the desugared nodes all belong to the "for" line
         Stmt body = statement();
         if (incr != null)
-            body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(incr)));
+            body = at(line, new Stmt.Block(Arrays.asList(body, at(line, new Stmt.Expression(incr)))));
 
         if (cond == null)
             cond = new Expr.Literal(true);
-        body = new Stmt.While(cond, body);
+        body = at(line, new Stmt.While(cond, body));
 
         if (init != null)
-            body = new Stmt.Block(Arrays.asList(init, body));
+            body = new Stmt.Block(Arrays.asList(at(line, init), body));
         return body;
     }
 
+    // parfor only takes the one header shape, so the range is known before
+    // the body runs and can be split up: i = lo, lo+1, ... while i < hi.
+    private Stmt parforStmt() {
+        Token keyword = prev();
+        consume(L_PAREN, "Expect '(' after 'parfor'.");
+        consume(VAR, "Expect 'var' after '(' in parfor.");
+        Token name = consume(IDENTIFIER, "Expect variable name.");
+        consume(EQ, "Expect '=' after parfor variable.");
+        Expr lo = expression();
+        consume(SEMICOLON, "Expect ';' after parfor start.");
+
+        parforVar(name, "Expect parfor condition to test '"+name.lexeme+"'.");
+        consume(LESS, "Expect '<' in parfor condition.");
+        Expr hi = expression();
+        consume(SEMICOLON, "Expect ';' after parfor condition.");
+
+        parforVar(name, "Expect parfor increment to step '"+name.lexeme+"'.");
+        consume(PLUS_PLUS, "Expect '++' in parfor increment.");
+        consume(R_PAREN, "Expect ')' after parfor increment.");
+
+        return new Stmt.ParFor(keyword, name, lo, hi, statement());
+    }
+
+    private void parforVar(Token name, String message) {
+        Token token = consume(IDENTIFIER, message);
+        if (!token.lexeme.equals(name.lexeme))
+            throw error(token, message);
+    }
+
     private List<Stmt> block() {
         List<Stmt> stmts = new ArrayList<>();
         // the !atEnd() check is super important, otherwise possible to
@@ -264,21 +364,20 @@ public class Parser {
         return expr;
     }
 
-    // due to the plus operator being overloaded w/ string concat,
-    // added redundant plus operation in Interpreter for '+=' and '++'
+    // "+=", "-=", "++" and "--" become a single Compound node instead of
+    // desugaring into Assign(Binary(var, op, val)) so the target is only
+    // looked up once. "++" and "--" leave the value null (implicit 1).
     private Expr assignVariable(Expr.Variable var, Token operator) {
-        Expr val;
         if (operator.type == EQ) {
             // recursion so "a = b = 1;" works in a right associative way
             // this now allows "a = b[0] = c = 1;"
-            val = assignment();
+            Expr val = assignment();
             return new Expr.Assign(var.name, val);
         }
-        else if (operator.type == PLUS_EQ || operator.type == MINUS_EQ)
+        Expr val = null;
+        if (operator.type == PLUS_EQ || operator.type == MINUS_EQ)
             val = or();
-        else
-            val = new Expr.Literal(Double.valueOf(1.));
-        return new Expr.Assign(var.name, new Expr.Binary(var, operator, val));
+        return new Expr.Compound(var.name, operator, val);
     }
 
     // mainly used for assigning to array but future proofed.
@@ -289,19 +388,18 @@ public class Parser {
     // caller -> callee ("(args?)" | "[ind]")
     // callee -> IDENTIFIER | caller
     private Expr assignCallable(Expr.Call caller, Token operator) {
-        Expr val;
         if (operator.type == EQ) {
             // recursion so "a = b = 1;" works in a right associative way
             // this now allows "a = b[0] = c = 1;"
-            val = assignment();
+            Expr val = assignment();
             return new Expr.AssignCaller(caller.callee, caller.arguments, caller.error, val);
         }
-        else if (operator.type == PLUS_EQ || operator.type == MINUS_EQ)
+        // callee and index are evaluated once, unlike the old Binary desugaring
+        // which re-evaluated both to read the element back.
+        Expr val = null;
+        if (operator.type == PLUS_EQ || operator.type == MINUS_EQ)
             val = or();
-        else
-            val = new Expr.Literal(Double.valueOf(1.));
-        return new Expr.AssignCaller(caller.callee, caller.arguments, caller.error,
-                                        new Expr.Binary(caller.callee, operator, val));
+        return new Expr.CompoundCaller(caller.callee, caller.arguments, caller.error, operator, val);
     }
 /*
     // pass all the params of Expr.Array instead of passing Expr.Array itself b/c
@@ -414,6 +512,16 @@ public class Parser {
             Expr right = unary();
             return new Expr.Unary(op, right);
         }
+        if (match(AWAIT)) {
+            Token keyword = prev();
+            return new Expr.Await(keyword, unary());
+        }
+        if (match(ASYNC)) {
+            Token keyword = prev();
+            if (!(call() instanceof Expr.Call call))
+                throw error(keyword, "Expect a call after 'async'.");
+            return new Expr.Async(keyword, call);
+        }
         return call();
     }
 
@@ -483,7 +591,7 @@ public class Parser {
     // throwing is done by the terminal production and caught higher up
     // while unwinding to the correct nonterminal to aid in syncing parser
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        errors.error(token, message);
         return new ParseError();
     }
 
@@ -493,8 +601,8 @@ public class Parser {
         while (!atEnd()) {
             if (prev().type == SEMICOLON) return;
             // statements usually start with these keywords
-            switch (peek().type) {
-                case CLASS, FOR, FN, IF, PRINT, RETURN, BREAK, VAR, ARR, WHILE:
+            switch (peekType()) {
+                case CLASS, FOR, PARFOR, FN, IF, PRINT, RETURN, BREAK, VAR, ARR, WHILE:
                     return;
             }
             advance();
@@ -504,7 +612,13 @@ public class Parser {
     // since atEnd() is only sensitive to cur == EOF,
     // need to care about advancing past it
     private void advance() {
-        if (!atEnd()) cur++;
+        if (atEnd()) return;
+        if (scanner == null) {
+            cur++;
+            return;
+        }
+        previous = current;
+        current = scanner.nextToken();
     }
 
     private Token consume(TokenType type, String message) {
@@ -529,18 +643,32 @@ public class Parser {
 
     private Boolean check(TokenType type) {
         if (atEnd()) return false;
-        return peek().type == type;
+        return peekType() == type;
+    }
+
+    private int peekLine() {
+        return scanner != null ? current.line : tokens.line(cur);
+    }
+
+    private TokenType peekType() {
+        return scanner != null ? current.type : tokens.type(cur);
     }
 
     private Token peek() {
-        return tokens.get(cur);
+        return scanner != null ? current : tokens.token(cur);
     }
 
+    // the same token is often asked for more than once
+    // so cache it instead of rebuilding it
     private Token prev() {
-        return tokens.get(cur-1);
+        if (scanner == null && previousIndex != cur-1) {
+            previous = tokens.token(cur-1);
+            previousIndex = cur-1;
+        }
+        return previous;
     }
 
     private Boolean atEnd() {
-        return tokens.get(cur).type == EOF;
+        return peekType() == EOF;
     }
 }
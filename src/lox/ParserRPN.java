@@ -10,9 +10,12 @@ import static lox.TokenType.*;
 // more than 1 assigned role, which is why the "-" op
 // being both binary and unary doesn't work for RPN,
 // since it changes operation depending on context.
-// Context-free
+// so a "-" w/ no operand before it (at the start, or after an
+// operator or "(") is output as its own NEGATE token.
+// it binds tighter than "^", same as Parser.unary(): -2^2 is 4.
 public class ParserRPN {
     private final List<Token> tokens;
+    private final ErrorReporter errors;
     private final Stack<Token> ops = new Stack<>();
     private final List<Token> output = new ArrayList<>();
     private int cur = 0;
@@ -22,7 +25,8 @@ public class ParserRPN {
     // equality: ==, !=
     // comparison: >, <, >=, <=
     // term: +, -
-    // factor: *, /
+    // factor: *, /, %
+    // exponent: ^
     // group: (, )
     static {
         hmap = new HashMap<>();
@@ -36,32 +40,44 @@ public class ParserRPN {
         hmap.put(MINUS, 2);
         hmap.put(STAR, 3);
         hmap.put(SLASH, 3);
-        hmap.put(R_PAREN, 4);
+        hmap.put(MOD, 3);
+        hmap.put(HAT, 4);
+        hmap.put(R_PAREN, 5);
+        hmap.put(NEGATE, 5);
         //hmap.put(TokenType.BANG, 4);
         //hmap.put(TokenType.MINUS, 4); // RPN can't handle unary?
     }
 
-    public ParserRPN(List<Token> tokens) {
+    public ParserRPN(List<Token> tokens, ErrorReporter errors) {
         this.tokens = tokens;
+        this.errors = errors;
     }
 
     // shunting yard algo
     // stack ops until an op with lower precedence is read,
     // from which offload all ops into output stack
     public List<Token> parseTokens() {
+        Token prev = null;
         while (!atEOF()) {
             Token t = tokens.get(cur++);
+            if (t.type == MINUS && (prev == null || (isOperator(prev) && prev.type != R_PAREN)))
+                t = new Token(NEGATE, "-", null, t.line);
+            prev = t;
             // highest precedence to lowest
-            if (t.type == NUMBER)
+            // identifiers are variables bound at evaluation (see Formula)
+            if (t.type == NUMBER || t.type == IDENTIFIER)
                 output.add(t);
             else if (isOperator(t)) {
                 if (t.type == L_PAREN)
                     ops.push(new Token(R_PAREN,")",null,t.line));
+                // prefix, its operand isn't out yet so nothing to pop
+                else if (t.type == NEGATE)
+                    ops.push(t);
                 else if (t.type == R_PAREN) {
                     while (!ops.empty() && ops.peek().type != R_PAREN)
                         output.add(ops.pop());
                     if (ops.empty()) {
-                        Lox.error(t,"Unmatched parenthesis.");
+                        errors.error(t,"Unmatched parenthesis.");
                         // to avoid popping empty
                         break;
                     }
@@ -81,7 +97,7 @@ public class ParserRPN {
                 }
             }
             else {
-                Lox.error(t, "Token unsupported by parser.");
+                errors.error(t, "Token unsupported by parser.");
             }
         }
 
@@ -92,7 +108,7 @@ public class ParserRPN {
 
     private Boolean isOperator(Token token) {
         return switch (token.type) {
-            case L_PAREN, R_PAREN, PLUS, MINUS, STAR, SLASH,
+            case L_PAREN, R_PAREN, PLUS, MINUS, NEGATE, STAR, SLASH, MOD, HAT,
                  GREATER, LESS, GREATER_EQ, LESS_EQ, EQ_EQ, BANG_EQ
                     -> true;
             default -> false;
@@ -0,0 +1,116 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// a script scanned, parsed and resolved once, then run any number of times:
+//   PreparedScript rule = PreparedScript.prepare(source);
+//   PreparedScript.Result r = rule.execute(Map.of("amount", 12.5));
+//   r.get("approved");
+// the AST and resolved depths are never written after prepare(), so
+// executions share them, concurrently too. each execute() gets its own
+// Interpreter, globals and ErrorReporter, w/ the inputs defined as globals.
+// function bodies are always parsed eagerly: a LazyBody parses and resolves
+// on its first call, which would write to the shared AST.
+public final class PreparedScript {
+    // prepared scripts by source hash. cleared when it fills up rather than
+    // tracking use, the common case is a handful of scripts run many times.
+    private static final int MAX_CACHED = 256;
+    private static final Map<String, PreparedScript> cache = new ConcurrentHashMap<>();
+
+    private final List<Stmt> stmts;
+    private final Map<Expr, Integer> locals;
+
+    private PreparedScript(List<Stmt> stmts, Map<Expr, Integer> locals) {
+        this.stmts = stmts;
+        this.locals = locals;
+    }
+
+    // throws IllegalArgumentException w/ the error messages if the source
+    // doesn't compile. compiled scripts are cached by source hash.
+    public static PreparedScript prepare(String source) {
+        String hash = AstCache.hash(source.getBytes(StandardCharsets.UTF_8));
+        PreparedScript script = cache.get(hash);
+        if (script != null) return script;
+        script = compile(source);
+        if (cache.size() >= MAX_CACHED) cache.clear();
+        cache.put(hash, script);
+        return script;
+    }
+
+    private static PreparedScript compile(String source) {
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        PrintStream report = new PrintStream(messages, true, StandardCharsets.UTF_8);
+        ErrorReporter errors = new ErrorReporter(report, report);
+        Map<Expr, Integer> locals = new HashMap<>();
+
+        TokenBuffer tokens = new Scanner(source, errors).scanBuffer();
+        List<Stmt> stmts = new Parser(tokens, 0, false, errors).parse();
+        if (!errors.hadError)
+            new Resolver(new Interpreter(errors, report, locals)).resolve(stmts);
+        if (errors.hadError)
+            throw new IllegalArgumentException(messages.toString(StandardCharsets.UTF_8).trim());
+        return new PreparedScript(List.copyOf(stmts), locals);
+    }
+
+    public Result execute(Map<String, ?> inputs) {
+        return execute(inputs, System.out, System.err);
+    }
+
+    public Result execute(Map<String, ?> inputs, PrintStream out, PrintStream err) {
+        return execute(inputs, out, err, null);
+    }
+
+    // inputs may be null, numbers, strings or booleans (numbers become doubles).
+    // budget may be null for no limits, otherwise it must be a fresh one.
+    public Result execute(Map<String, ?> inputs, PrintStream out, PrintStream err, Budget budget) {
+        ErrorReporter errors = new ErrorReporter(out, err);
+        Interpreter interpreter = new Interpreter(errors, out, locals);
+        interpreter.budget = budget;
+        for (Map.Entry<String, ?> input : inputs.entrySet())
+            interpreter.globals.define(input.getKey(), toLox(input.getKey(), input.getValue()));
+        interpreter.interpret(stmts);
+        interpreter.finish();
+        return new Result(errors.hadRuntimeError ? 70 : 0, interpreter.globals);
+    }
+
+    private static Object toLox(String name, Object value) {
+        if (value == null || value instanceof Double || value instanceof String || value instanceof Boolean)
+            return value;
+        if (value instanceof Number number)
+            return number.doubleValue();
+        throw new IllegalArgumentException("Input '"+name+"' has unsupported type "+
+                                            value.getClass().getSimpleName()+".");
+    }
+
+    // what's left after an execution: its exit code (0, or 70 after a
+    // runtime error) and its globals
+    public static final class Result {
+        private final int exitCode;
+        private final Environment globals;
+
+        private Result(int exitCode, Environment globals) {
+            this.exitCode = exitCode;
+            this.globals = globals;
+        }
+
+        public int exitCode() {
+            return exitCode;
+        }
+
+        // value of a global after the run, e.g. an output variable.
+        // Lox numbers are Doubles and nil is null.
+        public Object get(String name) {
+            try {
+                return globals.get(new Token(TokenType.IDENTIFIER, name, null, 0));
+            }catch (RuntimeError e) {
+                throw new IllegalArgumentException("No global named '"+name+"'.");
+            }
+        }
+    }
+}
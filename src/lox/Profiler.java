@@ -0,0 +1,114 @@
+package lox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+// sampling profiler for Lox code (--profile=<file>).
+// the Interpreter keeps a shadow stack of LoxFunction frames here, each with
+// the line it's currently at, and a daemon thread snapshots it every interval.
+// output is the "collapsed stack" format flame graph tools take:
+//   <script>:9;fib:3;fib:3 1234
+// where the number is how many samples had exactly that stack.
+// the sampler reads the stack w/o locking, so a sample taken mid push/pop
+// can be off by a frame; that's fine for a statistical profile.
+class Profiler {
+    private static final int MAX_DEPTH = 1024;
+
+    // shadow stack, only written by the interpreter thread.
+    // frames past MAX_DEPTH are counted but not recorded.
+    private final String[] names = new String[MAX_DEPTH];
+    private final int[] lines = new int[MAX_DEPTH];
+    private volatile int depth = 0;
+
+    // only touched by the sampler thread until it's stopped
+    private final Map<String, long[]> samples = new HashMap<>();
+    private final long intervalNanos;
+    private Thread sampler;
+    private volatile boolean running;
+    // samples are only taken between resume() and pause(), i.e. while the
+    // interpreter runs (see LoxRuntime.execute), so scanning, parsing,
+    // resolving and the JIT warming up on them aren't charged to <script>:1
+    private volatile boolean sampling = false;
+
+    Profiler(long intervalNanos) {
+        this.intervalNanos = intervalNanos;
+        push("<script>", 1);
+    }
+
+    void push(String name, int line) {
+        int d = depth;
+        if (d < MAX_DEPTH) {
+            names[d] = name;
+            lines[d] = line;
+        }
+        depth = d+1;
+    }
+
+    void pop() {
+        depth = depth-1;
+    }
+
+    // line the innermost frame is at: the statement it's running, or the
+    // line of the call it's making
+    void line(int line) {
+        int d = depth-1;
+        if (d < MAX_DEPTH)
+            lines[d] = line;
+    }
+
+    void start() {
+        running = true;
+        sampler = new Thread(this::sample, "lox-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    void resume() {
+        sampling = true;
+    }
+
+    void pause() {
+        sampling = false;
+    }
+
+    void stop() {
+        running = false;
+        try {
+            sampler.join();
+        }catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sample() {
+        StringBuilder builder = new StringBuilder();
+        while (running) {
+            LockSupport.parkNanos(intervalNanos);
+            int d = Math.min(depth, MAX_DEPTH);
+            if (d == 0 || !sampling) continue;
+            builder.setLength(0);
+            for (int i=0; i<d; i++) {
+                if (i > 0) builder.append(';');
+                builder.append(names[i]).append(':').append(lines[i]);
+            }
+            samples.computeIfAbsent(builder.toString(), k -> new long[1])[0]++;
+        }
+    }
+
+    // call after stop()
+    void write(Path path) throws IOException {
+        List<String> stacks = new ArrayList<>(samples.keySet());
+        stacks.sort(null);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path))) {
+            for (String stack : stacks)
+                out.println(stack+" "+samples.get(stack)[0]);
+        }
+    }
+}
@@ -18,12 +18,30 @@ import java.util.Stack;
 // assumes Interpreter and Resolver are synced.
 class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     private final Interpreter interpreter;
+    private final ErrorReporter errors;
     private final Stack<Map<String,Boolean>> scopes = new Stack<>();
     private boolean curFunction = false;
     private boolean curLoop = false;
+    // directly inside a parfor body, i.e. not in a fn declared there
+    private boolean curParfor = false;
+    // index of the scope holding the innermost parfor's var (-1 outside
+    // any parfor). iterations run in parallel, so the body may only assign
+    // to vars declared above it; array elements are fair game.
+    private int parforScope = -1;
 
     Resolver(Interpreter interpreter) {
         this.interpreter = interpreter;
+        this.errors = interpreter.errors;
+    }
+
+    // picks up where a LazyBody was declared, reporting to the body's errors
+    Resolver(Interpreter interpreter, ErrorReporter errors,
+             Stack<Map<String,Boolean>> scopes, boolean curLoop, int parforScope) {
+        this.interpreter = interpreter;
+        this.errors = errors;
+        this.scopes.addAll(scopes);
+        this.curLoop = curLoop;
+        this.parforScope = parforScope;
     }
 
     void resolve(List<Stmt> statements) {
@@ -44,7 +62,7 @@ class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if (scopes.isEmpty()) return;
         Map<String, Boolean> scope = scopes.peek();
         if (scope.containsKey(name.lexeme))
-            Lox.error(name, "Variable previously declared in this scope.");
+            errors.error(name, "Variable previously declared in this scope.");
         scope.put(name.lexeme, false);
     }
 
@@ -88,7 +106,9 @@ class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (!curFunction)
-            Lox.error(stmt.keyword, "Cannot return from top-level.");
+            errors.error(stmt.keyword, "Cannot return from top-level.");
+        else if (curParfor)
+            errors.error(stmt.keyword, "Cannot return from inside a parfor.");
         if (stmt.expr != null)
             resolve(stmt.expr);
         return null;
@@ -97,7 +117,8 @@ class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitBreakStmt(Stmt.Break stmt) {
         if (!curLoop)
-            Lox.error(stmt.keyword, "Must be enclosed by a loop.");
+            errors.error(stmt.keyword, curParfor ? "Cannot break out of a parfor."
+                                                             : "Must be enclosed by a loop.");
         return null;
     }
 
@@ -116,6 +137,26 @@ class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         this.curLoop = enclosing;
     }
 
+    @Override
+    public Void visitParForStmt(Stmt.ParFor stmt) {
+        resolve(stmt.lo);
+        resolve(stmt.hi);
+        boolean enclosingLoop = curLoop, enclosingParfor = curParfor;
+        int enclosingScope = parforScope;
+        beginScope();
+        declare(stmt.name);
+        define(stmt.name);
+        curLoop = false;
+        curParfor = true;
+        parforScope = scopes.size()-1;
+        resolve(stmt.body);
+        endScope();
+        curLoop = enclosingLoop;
+        curParfor = enclosingParfor;
+        parforScope = enclosingScope;
+        return null;
+    }
+
     @Override
     public Void visitExpressionStmt(Stmt.Expression stmt) {
         resolve(stmt.expr);
@@ -152,21 +193,42 @@ class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     private void resolveFunction(Stmt.Function stmt, boolean curFunction) {
-        boolean enclosing = this.curFunction;
+        // not parsed yet, so save the scopes as they are now for later.
+        // copies b/c the maps keep changing as the rest is resolved.
+        if (stmt.body instanceof LazyBody lazy && !lazy.isParsed()) {
+            Stack<Map<String,Boolean>> snapshot = new Stack<>();
+            for (Map<String,Boolean> scope : scopes)
+                snapshot.push(new HashMap<>(scope));
+            lazy.defer(interpreter, stmt, snapshot, curLoop, parforScope);
+            return;
+        }
+        resolveFunctionBody(stmt, stmt.body, curFunction);
+    }
+
+    // called by LazyBody once the body has actually been parsed
+    void resolveFunctionBody(Stmt.Function stmt, List<Stmt> body) {
+        resolveFunctionBody(stmt, body, true);
+    }
+
+    private void resolveFunctionBody(Stmt.Function stmt, List<Stmt> body, boolean curFunction) {
+        boolean enclosing = this.curFunction, enclosingParfor = curParfor;
         this.curFunction = curFunction;
+        curParfor = false;
         beginScope();
         for (Token param : stmt.params) {
             declare(param);
             define(param);
         }
-        resolve(stmt.body);
+        resolve(body);
         endScope();
         this.curFunction = enclosing;
+        curParfor = enclosingParfor;
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
+        checkParforAssign(expr.name);
         resolveLocal(expr, expr.name);
         return null;
     }
@@ -180,6 +242,37 @@ class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Object visitCompoundExpr(Expr.Compound expr) {
+        if (expr.value != null)
+            resolve(expr.value);
+        checkParforAssign(expr.name);
+        resolveLocal(expr, expr.name);
+        return null;
+    }
+
+    @Override
+    public Object visitCompoundCallerExpr(Expr.CompoundCaller expr) {
+        if (expr.value != null)
+            resolve(expr.value);
+        resolve(expr.callee);
+        for (Expr args : expr.arguments)
+            resolve(args);
+        return null;
+    }
+
+    @Override
+    public Object visitAsyncExpr(Expr.Async expr) {
+        resolve(expr.call);
+        return null;
+    }
+
+    @Override
+    public Object visitAwaitExpr(Expr.Await expr) {
+        resolve(expr.expr);
+        return null;
+    }
+
     @Override
     public Object visitLogicalExpr(Expr.Logical expr) {
         resolve(expr.left);
@@ -240,17 +333,29 @@ class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         // get a Expr.Variable obj from how the AST was parsed and will
         // run into this error cond
         if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE)
-            Lox.error(expr.name, "Can't read local var in its own initializer.");
+            errors.error(expr.name, "Can't read local var in its own initializer.");
         resolveLocal(expr, expr.name);
         return null;
     }
 
+    // globals and the parfor var itself count as outside the body
+    private void checkParforAssign(Token name) {
+        if (parforScope < 0) return;
+        for (int i=scopes.size()-1; i>parforScope; i--) {
+            if (scopes.get(i).containsKey(name.lexeme))
+                return;
+        }
+        errors.error(name, "Cannot assign to '"+name.lexeme+"' from inside a parfor body.");
+    }
+
     private void resolveLocal(Expr expr, Token name) {
         for (int i=scopes.size()-1; i>=0; i--) {
             // cur assumes global if scopes dont contain var
             if (scopes.get(i).containsKey(name.lexeme)) {
                 // dist from most recent scope to scope where var is defined
-                interpreter.resolve(expr, scopes.size()-1 - i);
+                int depth = scopes.size()-1 - i;
+                if (Trace.RESOLVE) Trace.resolved(name, depth);
+                interpreter.resolve(expr, depth);
                 return;
             }
         }
@@ -1,60 +1,95 @@
 package lox;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 
+// scans either a whole in-memory source (scanTokens) or pulls tokens
+// one at a time (nextToken). when built from a Reader, only a window
+// of the source is kept in buf: everything before the current lexeme
+// is dropped whenever more input is read.
 public class Scanner {
-    private final String text;
-    private final List<Token> tokens;
+    private final Reader reader;
+    private char[] buf;
+    // number of valid chars in buf
+    private int limit;
     private int lexStart, cur, line;
-    private static final HashMap<String,TokenType> hmap;
-
-    static {
-        hmap = new HashMap<>();
-        hmap.put("and", TokenType.AND);
-        hmap.put("or", TokenType.OR);
-        hmap.put("true", TokenType.TRUE);
-        hmap.put("false", TokenType.FALSE);
-        hmap.put("if", TokenType.IF);
-        hmap.put("else", TokenType.ELSE);
-        //hmap.put("then", TokenType.THEN);
-        hmap.put("for", TokenType.FOR);
-        hmap.put("while", TokenType.WHILE);
-        hmap.put("print", TokenType.PRINT);
-        hmap.put("return", TokenType.RETURN);
-        hmap.put("break", TokenType.BREAK);
-        hmap.put("var", TokenType.VAR);
-        hmap.put("arr", TokenType.ARR);
-        hmap.put("fn", TokenType.FN);
-        hmap.put("class", TokenType.CLASS);
-        hmap.put("this", TokenType.THIS);
-        hmap.put("super", TokenType.SUPER);
-        hmap.put("nil", TokenType.NIL);
-    }
-
-    public Scanner(String source) {
-        this.text = source;
-        this.tokens = new ArrayList<>();
+    // set by addToken, taken by nextToken
+    private Token pending;
+    // only set while scanBuffer() runs
+    private TokenBuffer out;
+    // identifier names, shared with the TokenBuffer this scanner fills
+    private final SymbolTable symbols = new SymbolTable();
+    final ErrorReporter errors;
+
+    public Scanner(String source, ErrorReporter errors) {
+        this.errors = errors;
+        this.reader = null;
+        this.buf = source.toCharArray();
+        this.limit = buf.length;
+        this.lexStart = 0;
+        this.cur = 0;
+        this.line = 1;
+    }
+
+    public Scanner(Reader reader, ErrorReporter errors) {
+        this.errors = errors;
+        this.reader = reader;
+        this.buf = new char[8192];
+        this.limit = 0;
         this.lexStart = 0;
         this.cur = 0;
         this.line = 1;
     }
 
     public List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        }while (token.type != TokenType.EOF);
+        return tokens;
+    }
+
+    // packs every token into a TokenBuffer instead of Token objects.
+    // needs the whole source in memory since tokens are kept as offsets into it.
+    TokenBuffer scanBuffer() {
+        if (reader != null)
+            throw new IllegalStateException("Cannot buffer a streaming scanner.");
+        out = new TokenBuffer(buf, symbols);
         while (!atEnd()) {
+            lexStart = cur;
+            scanToken();
+        }
+        out.add(TokenType.EOF, cur, 0, line);
+        TokenBuffer tokens = out;
+        out = null;
+        return tokens;
+    }
+
+    // scans just enough source for one token.
+    // keeps returning EOF once the source is exhausted.
+    public Token nextToken() {
+        while (pending == null) {
+            if (atEnd())
+                return new Token(TokenType.EOF, "", null, line);
             // cur should be 1 more than lexStart for substring call except at init
             // also allows for lookahead
             lexStart = cur;
             scanToken();
         }
-        tokens.add(new Token(TokenType.EOF, "", null, line));
-        return tokens;
+        Token token = pending;
+        pending = null;
+        return token;
     }
 
     private void scanToken() {
         // save char then advance pointer
-        char c = text.charAt(cur++);
+        char c = buf[cur++];
         // check for symbolic lexemes including Strings
         switch (c) {
             // single char
@@ -63,7 +98,7 @@ public class Scanner {
             case '.':
                 if (isNumber(peek())) {
                     advanceNumbers();
-                    addToken(TokenType.NUMBER, Double.parseDouble(text.substring(lexStart, cur)));
+                    addToken(TokenType.NUMBER);
                 }
                 else
                     addToken(TokenType.DOT);
@@ -123,11 +158,11 @@ public class Scanner {
             //doubles
             case '&':
                 if (match('&')) addToken(TokenType.AND);
-                else Lox.error(line,"Expect another '&'.");
+                else errors.error(line,"Expect another '&'.");
                 break;
             case '|':
                 if (match('|')) addToken(TokenType.OR);
-                else Lox.error(line,"Expect another '|'.");
+                else errors.error(line,"Expect another '|'.");
                 break;
 
             // has literal
@@ -138,13 +173,12 @@ public class Scanner {
                     cur++;
                 }
                 if (atEnd()) {
-                    Lox.error(line-1, "Unterminated string.");
+                    errors.error(line-1, "Unterminated string.");
                     return;
                 }
                 // include end quote
                 cur++;
-                // remove quotes for literal arg
-                addToken(TokenType.STRING, text.substring(lexStart+1, cur-1));
+                addToken(TokenType.STRING);
                 break;
 
             // whitespace
@@ -161,25 +195,83 @@ public class Scanner {
                         cur++; // consume '.'
                         advanceNumbers();
                     }
-                    addToken(TokenType.NUMBER, Double.parseDouble(text.substring(lexStart, cur)));
+                    addToken(TokenType.NUMBER);
                 }
                 else if (isAlpha(c)) {
                     while (isAlpha(peek()) || isNumber(peek()))
                         cur++;
                     // "max munch": always take the longest lexeme (---a => -- -a NOT - --a)
-                    String literal = text.substring(lexStart, cur);
-                    TokenType type = hmap.get(literal);
-                    // if not a reserved keyword
-                    if (type == null)
-                        type = TokenType.IDENTIFIER;
-                    addToken(type);
+                    addToken(identifierType());
                 }
                 else
-                    Lox.error(line, "Unexpected character.");
+                    errors.error(line, "Unexpected character.");
                 break;
         }
     }
 
+    // keyword check straight on buf[lexStart..cur) w/o making a substring:
+    // switch on the first char (and second, where keywords share one),
+    // then compare the rest of the lexeme against the one candidate.
+    private TokenType identifierType() {
+        int length = cur-lexStart;
+        switch (buf[lexStart]) {
+            case 'a':
+                if (length == 3 && buf[lexStart+1] == 'n') return keyword(2, "d", TokenType.AND);
+                if (length == 3 && buf[lexStart+1] == 'r') return keyword(2, "r", TokenType.ARR);
+                if (length == 5 && buf[lexStart+1] == 's') return keyword(2, "ync", TokenType.ASYNC);
+                if (length == 5 && buf[lexStart+1] == 'w') return keyword(2, "ait", TokenType.AWAIT);
+                break;
+            case 'b': return keyword(1, "reak", TokenType.BREAK);
+            case 'c': return keyword(1, "lass", TokenType.CLASS);
+            case 'e': return keyword(1, "lse", TokenType.ELSE);
+            case 'f':
+                if (length > 1) {
+                    switch (buf[lexStart+1]) {
+                        case 'a': return keyword(2, "lse", TokenType.FALSE);
+                        case 'o': return keyword(2, "r", TokenType.FOR);
+                        case 'n': return keyword(2, "", TokenType.FN);
+                    }
+                }
+                break;
+            case 'i': return keyword(1, "f", TokenType.IF);
+            case 'n': return keyword(1, "il", TokenType.NIL);
+            case 'o': return keyword(1, "r", TokenType.OR);
+            case 'p':
+                if (length > 1) {
+                    switch (buf[lexStart+1]) {
+                        case 'a': return keyword(2, "rfor", TokenType.PARFOR);
+                        case 'r': return keyword(2, "int", TokenType.PRINT);
+                    }
+                }
+                break;
+            case 'r': return keyword(1, "eturn", TokenType.RETURN);
+            case 's': return keyword(1, "uper", TokenType.SUPER);
+            case 't':
+                // "then" is reserved in TokenType but not scanned as a keyword
+                if (length > 1) {
+                    switch (buf[lexStart+1]) {
+                        case 'r': return keyword(2, "ue", TokenType.TRUE);
+                        case 'h': return keyword(2, "is", TokenType.THIS);
+                    }
+                }
+                break;
+            case 'v': return keyword(1, "ar", TokenType.VAR);
+            case 'w': return keyword(1, "hile", TokenType.WHILE);
+        }
+        return TokenType.IDENTIFIER;
+    }
+
+    // true if the lexeme is exactly the already matched prefix + rest
+    private TokenType keyword(int offset, String rest, TokenType type) {
+        if (cur-lexStart != offset+rest.length())
+            return TokenType.IDENTIFIER;
+        for (int i=0; i<rest.length(); i++) {
+            if (buf[lexStart+offset+i] != rest.charAt(i))
+                return TokenType.IDENTIFIER;
+        }
+        return type;
+    }
+
     private boolean isAlpha(char c) {
         return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
     }
@@ -195,25 +287,64 @@ public class Scanner {
             cur++;
     }
 
-    // for lexemes with no literal like ';'
+    // literals are derived from the lexeme here rather than by the caller
+    // so scanBuffer() can skip building them altogether
     private void addToken(TokenType type) {
-        addToken(type,null);
+        if (out != null) {
+            out.add(type, lexStart, cur-lexStart, line);
+            return;
+        }
+        Object literal = switch (type) {
+            case NUMBER -> Double.parseDouble(slice(lexStart, cur));
+            // remove quotes for literal arg
+            case STRING -> slice(lexStart+1, cur-1);
+            default -> null;
+        };
+        String lexeme = type == TokenType.IDENTIFIER
+                ? symbols.intern(buf, lexStart, cur-lexStart)
+                : slice(lexStart, cur);
+        pending = new Token(type, lexeme, literal, line);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        String lexeme = text.substring(lexStart, cur);
-        tokens.add(new Token(type, lexeme, literal, line));
+    private String slice(int start, int end) {
+        return new String(buf, start, end-start);
     }
 
-    // check source text exhaustion
+    // check source text exhaustion, reading more if streaming
     private boolean atEnd() {
-        return cur >= text.length();
+        return cur >= limit && !fill();
+    }
+
+    // reads the next chunk from the reader into buf.
+    // chars before lexStart are already tokenized, so they are
+    // shifted out first; buf only grows if a single lexeme
+    // (e.g. a long string literal) outgrows it.
+    // returns false if nothing more could be read.
+    private boolean fill() {
+        if (reader == null) return false;
+        if (lexStart > 0) {
+            System.arraycopy(buf, lexStart, buf, 0, limit-lexStart);
+            limit -= lexStart;
+            cur -= lexStart;
+            lexStart = 0;
+        }
+        if (limit == buf.length)
+            buf = Arrays.copyOf(buf, buf.length*2);
+        int n;
+        try {
+            n = reader.read(buf, limit, buf.length-limit);
+        }catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (n <= 0) return false;
+        limit += n;
+        return true;
     }
 
     // if matching, consumes the current char and advances
     // else, do nothing
     private boolean match(char expected) {
-        if (atEnd() || text.charAt(cur) != expected)
+        if (atEnd() || buf[cur] != expected)
             return false;
         cur++;
         return true;
@@ -222,10 +353,13 @@ public class Scanner {
     // returns the current char
     // null char used since not number
     private char peek() {
-        return atEnd() ? '\0' : text.charAt(cur);
+        return atEnd() ? '\0' : buf[cur];
     }
 
     private char peekNext() {
-        return cur+1 >= text.length() ? '\0' : text.charAt(cur+1);
+        while (cur+1 >= limit) {
+            if (!fill()) return '\0';
+        }
+        return buf[cur+1];
     }
 }//EOC
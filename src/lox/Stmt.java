@@ -2,13 +2,25 @@ package lox;
 
 import java.util.List;
 
-abstract class Stmt {
+abstract sealed class Stmt permits
+        Stmt.If,
+        Stmt.Print,
+        Stmt.Return,
+        Stmt.Break,
+        Stmt.While,
+        Stmt.ParFor,
+        Stmt.Block,
+        Stmt.Expression,
+        Stmt.Var,
+        Stmt.Array,
+        Stmt.Function {
     interface Visitor<R> {
         R visitIfStmt(Stmt.If stmt);
         R visitPrintStmt(Stmt.Print stmt);
         R visitReturnStmt(Stmt.Return stmt);
         R visitBreakStmt(Stmt.Break stmt);
         R visitWhileStmt(Stmt.While stmt);
+        R visitParForStmt(Stmt.ParFor stmt);
         R visitBlockStmt(Stmt.Block stmt);
         R visitExpressionStmt(Stmt.Expression stmt);
         R visitVarStmt(Stmt.Var stmt);
@@ -16,14 +28,36 @@ abstract class Stmt {
         R visitFunctionStmt(Stmt.Function stmt);
     }
 
+    static final int IF = 0;
+    static final int PRINT = 1;
+    static final int RETURN = 2;
+    static final int BREAK = 3;
+    static final int WHILE = 4;
+    static final int PAR_FOR = 5;
+    static final int BLOCK = 6;
+    static final int EXPRESSION = 7;
+    static final int VAR = 8;
+    static final int ARRAY = 9;
+    static final int FUNCTION = 10;
+
+    final int kind;
+
+    Stmt(int kind) {
+        this.kind = kind;
+    }
+
+    // source line the statement starts on, set by the Parser (0 if unknown)
+    int line;
+
     abstract <R> R accept(Stmt.Visitor<R> v);
 
-    static class If extends Stmt {
+    static final class If extends Stmt {
         final Expr condition;
         final Stmt thenBranch;
         final Stmt elseBranch;
 
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+            super(IF);
             this.condition = condition;
             this.thenBranch = thenBranch;
             this.elseBranch = elseBranch;
@@ -35,10 +69,11 @@ abstract class Stmt {
         }
     }
 
-    static class Print extends Stmt {
+    static final class Print extends Stmt {
         final Expr expr;
 
         Print(Expr expr) {
+            super(PRINT);
             this.expr = expr;
         }
 
@@ -48,11 +83,12 @@ abstract class Stmt {
         }
     }
 
-    static class Return extends Stmt {
+    static final class Return extends Stmt {
         final Token keyword;
         final Expr expr;
 
         Return(Token keyword, Expr expr) {
+            super(RETURN);
             this.keyword = keyword;
             this.expr = expr;
         }
@@ -63,10 +99,11 @@ abstract class Stmt {
         }
     }
 
-    static class Break extends Stmt {
+    static final class Break extends Stmt {
         final Token keyword;
 
         Break(Token keyword) {
+            super(BREAK);
             this.keyword = keyword;
         }
 
@@ -76,11 +113,12 @@ abstract class Stmt {
         }
     }
 
-    static class While extends Stmt {
+    static final class While extends Stmt {
         final Expr condition;
         final Stmt body;
 
         While(Expr condition, Stmt body) {
+            super(WHILE);
             this.condition = condition;
             this.body = body;
         }
@@ -91,10 +129,33 @@ abstract class Stmt {
         }
     }
 
-    static class Block extends Stmt {
+    static final class ParFor extends Stmt {
+        final Token keyword;
+        final Token name;
+        final Expr lo;
+        final Expr hi;
+        final Stmt body;
+
+        ParFor(Token keyword, Token name, Expr lo, Expr hi, Stmt body) {
+            super(PAR_FOR);
+            this.keyword = keyword;
+            this.name = name;
+            this.lo = lo;
+            this.hi = hi;
+            this.body = body;
+        }
+
+        @Override
+        <R> R accept(Stmt.Visitor<R> v) {
+            return v.visitParForStmt(this);
+        }
+    }
+
+    static final class Block extends Stmt {
         final List<Stmt> statements;
 
         Block(List<Stmt> statements) {
+            super(BLOCK);
             this.statements = statements;
         }
 
@@ -104,10 +165,11 @@ abstract class Stmt {
         }
     }
 
-    static class Expression extends Stmt {
+    static final class Expression extends Stmt {
         final Expr expr;
 
         Expression(Expr expr) {
+            super(EXPRESSION);
             this.expr = expr;
         }
 
@@ -117,11 +179,12 @@ abstract class Stmt {
         }
     }
 
-    static class Var extends Stmt {
+    static final class Var extends Stmt {
         final Token name;
         final Expr initializer;
 
         Var(Token name, Expr initializer) {
+            super(VAR);
             this.name = name;
             this.initializer = initializer;
         }
@@ -132,12 +195,13 @@ abstract class Stmt {
         }
     }
 
-    static class Array extends Stmt {
+    static final class Array extends Stmt {
         final Token name;
         final Expr length;
         final List<Expr> initializer;
 
         Array(Token name, Expr length, List<Expr> initializer) {
+            super(ARRAY);
             this.name = name;
             this.length = length;
             this.initializer = initializer;
@@ -149,12 +213,13 @@ abstract class Stmt {
         }
     }
 
-    static class Function extends Stmt {
+    static final class Function extends Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
 
         Function(Token name, List<Token> params, List<Stmt> body) {
+            super(FUNCTION);
             this.name = name;
             this.params = params;
             this.body = body;
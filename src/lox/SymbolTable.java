@@ -0,0 +1,69 @@
+package lox;
+
+// interns identifier names straight from the scanner's char buffer.
+// a name that was seen before is found by hashing/comparing the char range
+// in place, so repeated identifiers don't allocate a substring at all.
+// new names go through String.intern() so every copy of a name, including
+// the Java literals used for natives like "clock", is the same String and
+// Environment/Resolver map lookups hit the reference check in equals().
+// open addressing w/ linear probing; one per Scanner.
+// synchronized: lazy bodies (see LazyBody) are parsed on first call, and
+// calls from parfor chunks or tasks can parse different bodies of the same
+// TokenBuffer at once. grow() swaps both arrays, so a probe must never see
+// the new names w/ the old hashes. uncontended while scanning.
+class SymbolTable {
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int count = 0;
+
+    synchronized String intern(char[] src, int start, int length) {
+        int hash = hash(src, start, length);
+        int mask = names.length-1;
+        int i = hash & mask;
+        while (names[i] != null) {
+            if (hashes[i] == hash && matches(names[i], src, start, length))
+                return names[i];
+            i = (i+1) & mask;
+        }
+        String name = new String(src, start, length).intern();
+        names[i] = name;
+        hashes[i] = hash;
+        // keep load factor under 1/2 so probes stay short
+        if (++count*2 > names.length)
+            grow();
+        return name;
+    }
+
+    private void grow() {
+        String[] oldNames = names;
+        int[] oldHashes = hashes;
+        names = new String[oldNames.length*2];
+        hashes = new int[oldNames.length*2];
+        int mask = names.length-1;
+        for (int j=0; j<oldNames.length; j++) {
+            if (oldNames[j] == null) continue;
+            int i = oldHashes[j] & mask;
+            while (names[i] != null)
+                i = (i+1) & mask;
+            names[i] = oldNames[j];
+            hashes[i] = oldHashes[j];
+        }
+    }
+
+    // same as String.hashCode() so it could be reused if ever needed
+    private static int hash(char[] src, int start, int length) {
+        int h = 0;
+        for (int i=start; i<start+length; i++)
+            h = 31*h + src[i];
+        return h;
+    }
+
+    private static boolean matches(String name, char[] src, int start, int length) {
+        if (name.length() != length) return false;
+        for (int i=0; i<length; i++) {
+            if (name.charAt(i) != src[start+i])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package lox;
+
+import java.util.Arrays;
+
+// struct-of-arrays token list filled by Scanner.scanBuffer().
+// a token is just an index; its type, position and line live in parallel
+// int arrays and the lexeme/literal are sliced back out of the source
+// only when a Token object is actually needed (AST nodes, errors).
+// so scanning a large input allocates these arrays instead of
+// a Token + lexeme String (+ boxed literal) per token.
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final char[] source;
+    private final SymbolTable symbols;
+    private int[] types, starts, lengths, lines;
+    private int size = 0;
+
+    TokenBuffer(char[] source, SymbolTable symbols) {
+        this.source = source;
+        this.symbols = symbols;
+        // rough guess of 1 token per 4 chars, grows if needed
+        int capacity = Math.max(16, source.length/4);
+        this.types = new int[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+    }
+
+    void add(TokenType type, int start, int length, int line) {
+        if (size == types.length) {
+            int capacity = size*2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenType type(int i) {
+        return TYPES[types[i]];
+    }
+
+    int line(int i) {
+        return lines[i];
+    }
+
+    // identifiers come back interned, so the same name is always the same String
+    String lexeme(int i) {
+        if (types[i] == TokenType.IDENTIFIER.ordinal())
+            return symbols.intern(source, starts[i], lengths[i]);
+        return new String(source, starts[i], lengths[i]);
+    }
+
+    // no literal side table: both literal kinds can be recovered from
+    // the source range, which the Scanner has already validated.
+    Object literal(int i) {
+        return switch (type(i)) {
+            case NUMBER -> Double.parseDouble(lexeme(i));
+            // strip the quotes
+            case STRING -> new String(source, starts[i]+1, lengths[i]-2);
+            default -> null;
+        };
+    }
+
+    Token token(int i) {
+        return new Token(type(i), lexeme(i), literal(i), lines[i]);
+    }
+}
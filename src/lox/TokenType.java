@@ -9,7 +9,11 @@ enum TokenType {
 
     NUMBER, STRING, IDENTIFIER,
 
-    VAR, ARR, TRUE, FALSE, NIL, AND, OR, IF, ELSE, THEN, RETURN, BREAK, FN, FOR, WHILE, CLASS, THIS, SUPER, PRINT,
+    VAR, ARR, TRUE, FALSE, NIL, AND, OR, IF, ELSE, THEN, RETURN, BREAK, FN, FOR, WHILE, PARFOR, ASYNC, AWAIT, CLASS, THIS, SUPER, PRINT,
 
-    EOF
+    EOF,
+
+    // never scanned, ParserRPN's unary minus. last, so the ordinals
+    // AstCache writes don't move
+    NEGATE
 }
@@ -0,0 +1,71 @@
+package lox;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+// front end diagnostics, all off by default.
+// levels come from -Djlox.trace=tokens,ast,resolve,time (or "all"), which
+// Lox.main sets from --trace=... before this class is first touched.
+// they're static finals so "if (Trace.AST)" is a constant the JIT folds:
+// a disabled level costs nothing in the hot path.
+// output goes to -Djlox.trace.out=<file> (--trace-out=<file>), else stderr,
+// so it never mixes with the script's own output.
+class Trace {
+    static final boolean TOKENS, AST, RESOLVE, TIME;
+    static final PrintStream out;
+
+    static {
+        boolean tokens = false, ast = false, resolve = false, time = false;
+        String levels = System.getProperty("jlox.trace", "");
+        for (String level : levels.split(",")) {
+            switch (level.trim()) {
+                case "" -> {}
+                case "tokens" -> tokens = true;
+                case "ast" -> ast = true;
+                case "resolve" -> resolve = true;
+                case "time" -> time = true;
+                case "all" -> tokens = ast = resolve = time = true;
+                default -> System.err.println("Unknown trace level '"+level+"' ignored.");
+            }
+        }
+        TOKENS = tokens;
+        AST = ast;
+        RESOLVE = resolve;
+        TIME = time;
+        out = openSink(System.getProperty("jlox.trace.out"));
+    }
+
+    private static PrintStream openSink(String path) {
+        if (path == null) return System.err;
+        try {
+            return new PrintStream(new FileOutputStream(path), true);
+        }catch (FileNotFoundException e) {
+            System.err.println("Cannot open trace output '"+path+"', using stderr.");
+            return System.err;
+        }
+    }
+
+    static void tokens(TokenBuffer tokens) {
+        StringBuilder builder = new StringBuilder("tokens:");
+        for (int i=0; i<tokens.size(); i++)
+            builder.append(" ").append(tokens.lexeme(i));
+        out.println(builder);
+    }
+
+    static void ast(List<Stmt> stmts) {
+        AstPrinter printer = new AstPrinter();
+        for (Stmt stmt : stmts)
+            out.println("ast: "+printer.print(stmt));
+    }
+
+    static void resolved(Token name, int depth) {
+        out.println("resolve: '"+name.lexeme+"' [line "+name.line+"] at depth "+depth);
+    }
+
+    // start is a System.nanoTime() taken when the phase began
+    static void time(String phase, long start) {
+        out.printf("time: %-8s %.3f ms%n", phase, (System.nanoTime()-start)/1e6);
+    }
+}
@@ -5,8 +5,12 @@ import java.io.PrintWriter;
 import java.util.List;
 import java.util.Arrays;
 
+// the base class is sealed, nodes are final and every node carries an
+// int kind tag (w/ a constant per node type), so code can switch on a node
+// instead of going through accept(). the Interpreter itself uses accept(),
+// see its execute(). records + pattern matching switch would be the Java 21
+// way; this is the Java 17 equivalent and keeps the Visitor working.
 public class GenerateAST {
-
     public static void main(String[] args) throws IOException {
         if (args.length != 1) {
             System.out.println("Usage: generateAST <output dir>");
@@ -17,11 +21,15 @@ public class GenerateAST {
         defineAST(outputDir, "Expr", Arrays.asList(
                 "Assign : Token name, Expr value",
                 "AssignCaller : Expr callee, List<Expr> arguments, Token error, Expr value",
+                "Compound : Token name, Token op, Expr value",
+                "CompoundCaller : Expr callee, List<Expr> arguments, Token error, Token op, Expr value",
                 //"Set : Expr caller, Token property, Expr value",
                 "Logical : Expr left, Token op, Expr right",
                 "Binary : Expr left, Token op, Expr right",
                 "Unary : Token op, Expr right",
                 "Call : Expr callee, List<Expr> arguments, Token error",
+                "Async : Token keyword, Expr.Call call",
+                "Await : Token keyword, Expr expr",
                 "Get : Expr caller, Token property",
                 "Group : Expr expr",
                 "Literal : Object val",
@@ -34,17 +42,28 @@ public class GenerateAST {
                 "Return : Token keyword, Expr expr",
                 "Break : Token keyword",
                 "While : Expr condition, Stmt body",
+                "ParFor : Token keyword, Token name, Expr lo, Expr hi, Stmt body",
                 "Block : List<Stmt> statements",
                 "Expression : Expr expr",
                 "Var : Token name, Expr initializer",
                 "Array : Token name, Expr length, List<Expr> initializer",
                 "Function : Token name, List<Token> params, List<Stmt> body"
-        ));
+        ), "// source line the statement starts on, set by the Parser (0 if unknown)", "int line");
     }
 
     private static void defineAST(String dir,
                                   String baseClassName,
                                   List<String> subClasses) throws IOException {
+        defineAST(dir, baseClassName, subClasses, null, null);
+    }
+
+    // baseField: an optional mutable field on the base class that isn't
+    // part of any constructor, w/ the comment to put above it
+    private static void defineAST(String dir,
+                                  String baseClassName,
+                                  List<String> subClasses,
+                                  String baseFieldComment,
+                                  String baseField) throws IOException {
         PrintWriter writer = new PrintWriter(dir+"/"+baseClassName+".java", "UTF-8");
 
         writer.println("package lox;");
@@ -59,10 +78,17 @@ public class GenerateAST {
                 "\"<\", \">\", \"!\", \"==\" | \"!=\" | \">=\" | \"<=\"  " +
                 "(only arithmetic & logic for now)");
         writer.println("// literal -> NUMBER | STRING | \"nil\" | \"true\" | \"false\"");*/
-        writer.println("abstract class "+ baseClassName +" {");
+        printSealedHeader(writer, baseClassName, subClasses);
         // Visitor design pattern
         printVisitor(writer,baseClassName,subClasses);
         writer.println();
+        printKinds(writer, baseClassName, subClasses);
+        writer.println();
+        if (baseField != null) {
+            writer.println("    "+baseFieldComment);
+            writer.println("    "+baseField+";");
+            writer.println();
+        }
         writer.println("    abstract <R> R accept("+baseClassName+".Visitor<R> v);");
         writer.println();
         // Receivers
@@ -85,13 +111,41 @@ public class GenerateAST {
         w.println("    }");
     }
 
+    static void printSealedHeader(PrintWriter w, String baseClassName, List<String> subClasses) {
+        w.println("abstract sealed class "+baseClassName+" permits");
+        for (int i=0; i<subClasses.size(); i++) {
+            String subClassName = subClasses.get(i).split(":")[0].trim();
+            w.println("        "+baseClassName+"."+subClassName+(i < subClasses.size()-1 ? "," : " {"));
+        }
+    }
+
+    // one constant per node type + the tag itself, set through super()
+    static void printKinds(PrintWriter w, String baseClassName, List<String> subClasses) {
+        for (int i=0; i<subClasses.size(); i++) {
+            String subClassName = subClasses.get(i).split(":")[0].trim();
+            w.println("    static final int "+constantName(subClassName)+" = "+i+";");
+        }
+        w.println();
+        w.println("    final int kind;");
+        w.println();
+        w.println("    "+baseClassName+"(int kind) {");
+        w.println("        this.kind = kind;");
+        w.println("    }");
+    }
+
+    // AssignCaller -> ASSIGN_CALLER
+    static String constantName(String subClassName) {
+        return subClassName.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+    }
+
     static void printReceiver(PrintWriter w, String baseClassName, String subClassName, String fields) {
         String[] fieldList = fields.split(", ");
-        w.println("    static class "+subClassName+" extends "+baseClassName+" {");
+        w.println("    static final class "+subClassName+" extends "+baseClassName+" {");
         for (String field: fieldList)
             w.println("        final "+field+";");
         w.println();
         w.println("        "+subClassName+"("+fields+") {");
+        w.println("            super("+constantName(subClassName)+");");
         for (String field: fieldList) {
             String varName = field.split(" ")[1].trim();
             w.println("            this."+varName+ " = "+varName+";");